@@ -1,5 +1,6 @@
 import functions.*;
 import functions.basic.*;
+import functions.meta.FusedFunction;
 import java.io.*;
 
 public class Main {
@@ -122,10 +123,80 @@ public class Main {
             e.printStackTrace();
         }
 
+        // 6. Тестирование компиляции функций (FunctionCompiler)
+        System.out.println("\n Тест компиляции функций ");
+        checkCompiled("sin^2 + cos^2", Functions.sum(Functions.power(sin, 2), Functions.power(cos, 2)));
+        checkCompiled("log2(exp(x - 1))", Functions.composition(new Log(2), Functions.shift(exp, 1, 0)));
+        checkCompiled("sqrt(3 * sin(x / 2))", Functions.power(Functions.scale(sin, 2, 3), 0.5));
+        checkCompiled("tan(x) * exp(x)", Functions.mult(new Tan(), exp));
+        checkCompiled("1 / sin(x)", Functions.power(sin, -1));
+        checkCompiled("tabSin^3 + tabSin", Functions.sum(Functions.power(Functions.shift(tabSin, 0, 0), 3), tabSin));
+
+        // дерево, код которого больше HugeMethodLimit: вместо класса - FusedFunction
+        Function deep = sin;
+        for (int i = 1; i <= 400; i++) {
+            deep = Functions.sum(deep, Functions.mult(Functions.shift(cos, i, 0), Functions.scale(exp, i, 1)));
+        }
+        System.out.println("Глубокое дерево скомпилировано в FusedFunction: "
+                + (Functions.compile(deep) instanceof FusedFunction));
+        checkCompiled("глубокое дерево", deep);
+
         // Удаление временных файлов
         fileChar.deleteOnExit();
         fileByte.deleteOnExit();
         fileSer.deleteOnExit();
     }
 
+    // Сравнение Functions.compile(f) с исходным деревом и с Functions.optimize(f),
+    // по одному значению и пакетом, в том числе в точках NaN, ±0 и ±бесконечность.
+    // С optimize значения должны совпадать до бита, с деревом - с точностью до
+    // порядка округлений (несколько последних разрядов)
+    private static void checkCompiled(String name, Function f) {
+        Function compiled = Functions.compile(f);
+        Function optimized = Functions.optimize(f);
+        double[] xs = new double[1005];
+        xs[0] = Double.NaN;
+        xs[1] = 0.0;
+        xs[2] = -0.0;
+        xs[3] = Double.POSITIVE_INFINITY;
+        xs[4] = Double.NEGATIVE_INFINITY;
+        for (int i = 5; i < xs.length; i++) {
+            xs[i] = -10 + i * 0.02;
+        }
+        double[] batch = new double[xs.length];
+        compiled.evaluate(xs, 0, batch, 0, xs.length);
+        double[] optimizedBatch = new double[xs.length];
+        optimized.evaluate(xs, 0, optimizedBatch, 0, xs.length);
+
+        int differentFromOptimized = 0;
+        int differentFromTree = 0;
+        for (int i = 0; i < xs.length; i++) {
+            double value = compiled.getFunctionValue(xs[i]);
+            if (!sameBits(value, batch[i]) || !sameBits(value, optimized.getFunctionValue(xs[i]))
+                    || !sameBits(batch[i], optimizedBatch[i])) {
+                differentFromOptimized++;
+            }
+            if (!close(value, f.getFunctionValue(xs[i]))) {
+                differentFromTree++;
+            }
+        }
+        System.out.printf("%s: отличий от optimize - %d, от дерева - %d из %d точек%n",
+                name, differentFromOptimized, differentFromTree, xs.length);
+    }
+
+    private static boolean sameBits(double a, double b) {
+        return Double.doubleToLongBits(a) == Double.doubleToLongBits(b);
+    }
+
+    // NaN и бесконечности должны совпадать точно, конечные значения - с
+    // погрешностью 1e-12 относительно max(1, |значение|): в длинной сумме
+    // слагаемых порядка единицы другой порядок округлений даёт ошибку
+    // порядка 1e-15 и при малом результате
+    private static boolean close(double a, double b) {
+        if (Double.isNaN(a) || Double.isNaN(b) || Double.isInfinite(a) || Double.isInfinite(b)) {
+            return sameBits(a, b);
+        }
+        return Math.abs(a - b) <= 1e-12 * Math.max(1, Math.max(Math.abs(a), Math.abs(b)));
+    }
+
 }
\ No newline at end of file
@@ -1,11 +1,26 @@
 package functions;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamException;
+import java.util.Arrays;
+
 //При этом разумно организовать работу с массивом так,
 //чтобы точки в нём были всегда упорядочены по значению координаты x.
 
 public class ArrayTabulatedFunction implements TabulatedFunction {
-    private FunctionPoint[] arrayOfPoints;
-    private int pointCount; // это ваще что?
+    // значение, вычисленное для исходной версии класса (массив FunctionPoint):
+    // с ним потоки, записанные до перехода на TabulatedFunctionProxy, читаются
+    private static final long serialVersionUID = 1067607988662938875L;
+
+    // Точки хранятся в двух параллельных массивах примитивов (x и y),
+    // а не в массиве объектов FunctionPoint: 16 байт на точку вместо ~40
+    // и последовательный проход по памяти при поиске интервала
+    private double[] xs;
+    private double[] ys;
+    private int pointCount; // количество реально занятых ячеек массивов
+    private boolean uniform; // true, если абсциссы образуют равномерную сетку
     private static final double EPSILON = 1e-9;
 
     // создаёт объект табулированной функции
@@ -25,18 +40,22 @@ public class ArrayTabulatedFunction implements TabulatedFunction {
             throw new IllegalArgumentException("Length must be more than 2");
         }
         this.pointCount = array.length;
-        this.arrayOfPoints = new FunctionPoint[array.length]; // Размер точно под массив
+        this.xs = new double[array.length]; // Размер точно под массив
+        this.ys = new double[array.length];
 
         // Копируем первую точку
-        this.arrayOfPoints[0] = new FunctionPoint(array[0]);
+        this.xs[0] = array[0].getX();
+        this.ys[0] = array[0].getY();
 
         for (int i = 1; i < array.length; i++) {
             // Проверка упорядоченности
             if (array[i].getX() <= array[i - 1].getX()) {
                 throw new IllegalArgumentException("Points must be sorted by X");
             }
-            this.arrayOfPoints[i] = new FunctionPoint(array[i]);
+            this.xs[i] = array[i].getX();
+            this.ys[i] = array[i].getY();
         }
+        this.uniform = TabulatedArrays.isUniform(xs, pointCount);
     }
 
     /*
@@ -51,13 +70,15 @@ public class ArrayTabulatedFunction implements TabulatedFunction {
         if (pointsCount < 2) {
             throw new IllegalArgumentException("\nPoint number must be bigger than 2\n");
         }
-        this.arrayOfPoints = new FunctionPoint[pointsCount];
+        this.xs = new double[pointsCount];
+        this.ys = new double[pointsCount];
         this.pointCount = pointsCount;
         double step = (rightX - leftX) / (pointsCount - 1);
 
         for (int i = 0; i < pointsCount; i++) {
-            arrayOfPoints[i] = new FunctionPoint(leftX + step * i, 0);
+            xs[i] = leftX + step * i;
         }
+        this.uniform = true;
     }
 
     // вместо количества точек получает значения функции в виде массива
@@ -70,57 +91,47 @@ public class ArrayTabulatedFunction implements TabulatedFunction {
             throw new IllegalArgumentException("\nPoint number must be bigger than 2\n");
         }
         int len = values.length;
-        this.arrayOfPoints = new FunctionPoint[len];
+        this.xs = new double[len];
+        this.ys = new double[len];
         this.pointCount = values.length;
         double step = (rightX - leftX) / (len - 1);
 
         for (int i = 0; i < len; i++) {
-            arrayOfPoints[i] = new FunctionPoint(leftX + step * i, values[i]);
+            xs[i] = leftX + step * i;
+            ys[i] = values[i];
         }
+        this.uniform = true;
+    }
+
+    // принимает готовые массивы без копирования и проверок; вызывающий код
+    // пакета гарантирует, что абсциссы строго возрастают и точек не меньше двух
+    ArrayTabulatedFunction(double[] xs, double[] ys) {
+        this.xs = xs;
+        this.ys = ys;
+        this.pointCount = xs.length;
+        this.uniform = TabulatedArrays.isUniform(xs, pointCount);
     }
 
     // возвращает значение левой границы
     public double getLeftDomainBorder() {
-        return arrayOfPoints[0].getX();
+        return xs[0];
     }
 
     // должен возвращать значение правой границы
     public double getRightDomainBorder() {
-        return arrayOfPoints[pointCount - 1].getX();
-    }
-
-    // линейная интерполяция - вспомогательная функция
-    private double linearInterpolation(double x, double x0, double y0, double x1, double y1) {
-        double k = (y1 - y0) / (x1 - x0);
-        double b = y0 - k * x0;
-        double y = k * x + b;
-
-        return y;
+        return xs[pointCount - 1];
     }
 
-    // должен возвращать значение функции в точке x
+    // должен возвращать значение функции в точке x.
+    // Интервал ищется бинарным поиском, а на равномерной сетке - вычислением индекса
     public double getFunctionValue(double x) {
-        if ((x > getRightDomainBorder() && Math.abs(x - getRightDomainBorder()) > EPSILON) ||
-                (x < getLeftDomainBorder() && Math.abs(x - getLeftDomainBorder()) > EPSILON))
-            return Double.NaN;
-
-        if (Math.abs(x - arrayOfPoints[0].getX()) < EPSILON)
-            return arrayOfPoints[0].getY();
-
-        for (int i = 1; i < pointCount; i++) {
-            if (Math.abs(arrayOfPoints[i].getX() - x) < EPSILON)
-                return arrayOfPoints[i].getY();
-
-            if (arrayOfPoints[i].getX() > x) {
-                return linearInterpolation(x,
-                        arrayOfPoints[i - 1].getX(),
-                        arrayOfPoints[i - 1].getY(),
-                        arrayOfPoints[i].getX(),
-                        arrayOfPoints[i].getY());
-            }
-        }
+        return TabulatedArrays.valueAt(xs, ys, pointCount, x, uniform);
+    }
 
-        return Double.NaN;
+    // пакетное вычисление без виртуальных вызовов на каждую точку
+    @Override
+    public void evaluate(double[] in, int inOffset, double[] out, int outOffset, int length) {
+        TabulatedArrays.evaluate(xs, ys, pointCount, uniform, in, inOffset, out, outOffset, length);
     }
 
     // должен возвращать количество точек
@@ -138,7 +149,7 @@ public class ArrayTabulatedFunction implements TabulatedFunction {
         if (index >= this.pointCount || index < 0) {
             throw new FunctionPointIndexOutOfBoundsException();
         }
-        return new FunctionPoint(arrayOfPoints[index]);
+        return new FunctionPoint(xs[index], ys[index]);
     }
 
     // должен заменять указанную на копию переданной точки
@@ -152,17 +163,21 @@ public class ArrayTabulatedFunction implements TabulatedFunction {
 
         // 2. Проверка нарушения упорядоченности (слева и справа)
         // Используем EPSILON для сравнения
-        if (index > 0 && (newX < arrayOfPoints[index - 1].getX()
-                || Math.abs(newX - arrayOfPoints[index - 1].getX()) < EPSILON)) {
+        if (index > 0 && (newX < xs[index - 1]
+                || Math.abs(newX - xs[index - 1]) < EPSILON)) {
             throw new InappropriateFunctionPointException();
         }
-        if (index < pointCount - 1 && (newX > arrayOfPoints[index + 1].getX()
-                || Math.abs(newX - arrayOfPoints[index + 1].getX()) < EPSILON)) {
+        if (index < pointCount - 1 && (newX > xs[index + 1]
+                || Math.abs(newX - xs[index + 1]) < EPSILON)) {
             throw new InappropriateFunctionPointException();
         }
 
-        // 3. Создаем копию и присваиваем
-        arrayOfPoints[index] = new FunctionPoint(point);
+        // 3. Копируем координаты
+        if (newX != xs[index]) {
+            uniform = false;
+        }
+        xs[index] = newX;
+        ys[index] = point.getY();
     }
 
     // должен возвращать значение абсциссы точки с указанным номером.
@@ -170,7 +185,7 @@ public class ArrayTabulatedFunction implements TabulatedFunction {
         if (index >= this.pointCount || index < 0) {
             throw new FunctionPointIndexOutOfBoundsException();
         }
-        return arrayOfPoints[index].getX();
+        return xs[index];
     }
 
     // должен возвращать значение ординаты точки с указанным номером
@@ -178,7 +193,7 @@ public class ArrayTabulatedFunction implements TabulatedFunction {
         if (index >= this.pointCount || index < 0) {
             throw new FunctionPointIndexOutOfBoundsException();
         }
-        return arrayOfPoints[index].getY();
+        return ys[index];
     }
 
     // должен изменять значение абсциссы точки с указанным номером.
@@ -189,16 +204,19 @@ public class ArrayTabulatedFunction implements TabulatedFunction {
         }
 
         if (pointCount == 1) {
-            arrayOfPoints[index].setX(x);
+            xs[index] = x;
             return;
         }
 
         // Проверка границ с EPSILON
-        double leftBound = (index == 0) ? Double.NEGATIVE_INFINITY : arrayOfPoints[index - 1].getX();
-        double rightBound = (index == pointCount - 1) ? Double.POSITIVE_INFINITY : arrayOfPoints[index + 1].getX();
+        double leftBound = (index == 0) ? Double.NEGATIVE_INFINITY : xs[index - 1];
+        double rightBound = (index == pointCount - 1) ? Double.POSITIVE_INFINITY : xs[index + 1];
 
         if (x > leftBound + EPSILON && x < rightBound - EPSILON) {
-            arrayOfPoints[index].setX(x);
+            if (x != xs[index]) {
+                uniform = false;
+            }
+            xs[index] = x;
         } else {
             throw new InappropriateFunctionPointException();
         }
@@ -209,7 +227,7 @@ public class ArrayTabulatedFunction implements TabulatedFunction {
         if (index >= this.pointCount || index < 0) {
             throw new FunctionPointIndexOutOfBoundsException();
         }
-        arrayOfPoints[index].setY(y);
+        ys[index] = y;
     }
 
     // должен удалять заданную точку табулированной функции.
@@ -222,41 +240,120 @@ public class ArrayTabulatedFunction implements TabulatedFunction {
         }
 
         if (pointCount - index - 1 > 0) {
-            System.arraycopy(arrayOfPoints, index + 1, arrayOfPoints, index, pointCount - index - 1);
+            System.arraycopy(xs, index + 1, xs, index, pointCount - index - 1);
+            System.arraycopy(ys, index + 1, ys, index, pointCount - index - 1);
         }
 
-        arrayOfPoints[pointCount - 1] = null;
         pointCount--;
+        // удаление крайней точки сохраняет равномерность, внутренней - нарушает
+        uniform = TabulatedArrays.isUniform(xs, pointCount);
+
+        // Сжимаем массивы, если после удалений они заполнены меньше чем на четверть
+        if (pointCount < xs.length / 4) {
+            resize(pointCount * 2);
+        }
     }
 
     // добавляем точку
     public void addPoint(FunctionPoint point) throws InappropriateFunctionPointException {
         // Проверка на совпадение X с EPSILON
+        double newX = point.getX();
         for (int i = 0; i < pointCount; i++) {
-            if (Math.abs(arrayOfPoints[i].getX() - point.getX()) < EPSILON) {
+            if (Math.abs(xs[i] - newX) < EPSILON) {
                 throw new InappropriateFunctionPointException("Point with this X already exists");
             }
         }
 
-        FunctionPoint newPoint = new FunctionPoint(point);
-
         int insertIndex = 0;
-        while (insertIndex < pointCount && arrayOfPoints[insertIndex].getX() < newPoint.getX()) {
+        while (insertIndex < pointCount && xs[insertIndex] < newX) {
             insertIndex++;
         }
 
-        if (pointCount == arrayOfPoints.length) {
-            FunctionPoint[] newArray = new FunctionPoint[arrayOfPoints.length * 2 + 1];
-            System.arraycopy(arrayOfPoints, 0, newArray, 0, pointCount);
-            arrayOfPoints = newArray;
+        if (pointCount == xs.length) {
+            resize(xs.length * 2 + 1);
         }
 
         if (pointCount - insertIndex > 0) {
-            System.arraycopy(arrayOfPoints, insertIndex, arrayOfPoints, insertIndex + 1, pointCount - insertIndex);
+            System.arraycopy(xs, insertIndex, xs, insertIndex + 1, pointCount - insertIndex);
+            System.arraycopy(ys, insertIndex, ys, insertIndex + 1, pointCount - insertIndex);
         }
 
-        arrayOfPoints[insertIndex] = newPoint;
+        xs[insertIndex] = newX;
+        ys[insertIndex] = point.getY();
         pointCount++;
+        uniform = TabulatedArrays.isUniform(xs, pointCount);
+    }
+
+    // пакетное добавление: слияние отсортированного пакета с массивами за один проход
+    public void addPoints(double[] newXs, double[] newYs, PointConflictPolicy policy)
+            throws InappropriateFunctionPointException {
+        double[] bx = new double[newXs.length];
+        double[] by = new double[newXs.length];
+        int k = TabulatedArrays.sortBatch(newXs, newYs, bx, by, policy);
+
+        double[] mergedXs = new double[pointCount + k];
+        double[] mergedYs = new double[pointCount + k];
+        pointCount = TabulatedArrays.merge(xs, ys, pointCount, bx, by, k, mergedXs, mergedYs, policy);
+        xs = mergedXs;
+        ys = mergedYs;
+        uniform = TabulatedArrays.isUniform(xs, pointCount);
+    }
+
+    // снимок: копии занятых частей массивов
+    @Override
+    public TabulatedFunction freeze() {
+        return new FrozenTabulatedFunction(Arrays.copyOf(xs, pointCount), Arrays.copyOf(ys, pointCount));
+    }
+
+    // сериализуется через TabulatedFunctionProxy: только занятые ячейки массивов
+    private Object writeReplace() throws ObjectStreamException {
+        return new TabulatedFunctionProxy(TabulatedFunctionProxy.ARRAY,
+                Arrays.copyOf(xs, pointCount), Arrays.copyOf(ys, pointCount));
+    }
+
+    /*
+     * Новые потоки содержат TabulatedFunctionProxy, и этот метод для них не
+     * вызывается. Он читает только прежний формат класса - поля arrayOfPoints
+     * (FunctionPoint[]) и pointCount - с теми же проверками точек, что и
+     * прокси. Поток с любыми другими полями отклоняется.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        FunctionPoint[] points;
+        int count;
+        try {
+            points = (FunctionPoint[]) fields.get("arrayOfPoints", null);
+            count = fields.get("pointCount", 0);
+        } catch (IllegalArgumentException | ClassCastException e) {
+            throw new InvalidObjectException("Serialization proxy required");
+        }
+        if (points == null || count < 0 || count > points.length) {
+            throw new InvalidObjectException("Invalid point count");
+        }
+        double[] newXs = new double[count];
+        double[] newYs = new double[count];
+        for (int i = 0; i < count; i++) {
+            if (points[i] == null) {
+                throw new InvalidObjectException("Missing point " + i);
+            }
+            newXs[i] = points[i].getX();
+            newYs[i] = points[i].getY();
+        }
+        TabulatedFunctionProxy.checkPoints(newXs, newYs);
+        xs = newXs;
+        ys = newYs;
+        pointCount = count;
+        uniform = TabulatedArrays.isUniform(xs, pointCount);
+    }
+
+    // перевыделяет оба массива под новую ёмкость, сохраняя занятые ячейки
+    private void resize(int capacity) {
+        double[] newXs = new double[capacity];
+        double[] newYs = new double[capacity];
+        System.arraycopy(xs, 0, newXs, 0, pointCount);
+        System.arraycopy(ys, 0, newYs, 0, pointCount);
+        xs = newXs;
+        ys = newYs;
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,525 @@
+package functions;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/*
+ * Табулированная функция только для чтения, хранящая точки в сжатом виде.
+ * Равномерная сетка хранится только границами и числом точек. Столбцы
+ * чисел разбиты на блоки по BLOCK_SIZE точек; первое значение блока
+ * хранится в индексе как есть, остальные кодируются XOR-сжатием в духе
+ * Gorilla: XOR битов значения с битами предсказания (линейная экстраполяция
+ * по двум предыдущим точкам) и запись только значащих битов результата.
+ * Для гладких функций это в несколько раз меньше 16 байт на точку.
+ * Блоки декодируются независимо, поэтому при вычислении распаковывается
+ * только блок, содержащий нужный интервал.
+ *
+ * Формат потока (DataOutputStream):
+ *   int MAGIC ("TABZ"), int VERSION, int вид сетки (как в MappedTabulatedFunction),
+ *   int количество точек, double левая граница, double правая граница,
+ *   int точек в блоке, int число блоков,
+ *   для каждого блока: [double первая абсцисса], double первая ордината,
+ *   int смещение сжатых данных блока,
+ *   int длина сжатых данных, сами данные
+ */
+public final class CompressedTabulatedFunction implements TabulatedFunction {
+    private static final long serialVersionUID = 1L;
+
+    static final int MAGIC = 0x5441425A; // "TABZ"
+    static final int VERSION = 1;
+    static final int BLOCK_SIZE = 1024;
+
+    private static final double EPSILON = 1e-9;
+
+    private final int count;
+    private final double leftX;
+    private final double rightX;
+    private final boolean uniform;
+    private final int blockSize;
+    private final double[] firstXs; // null для равномерной сетки
+    private final double[] firstYs;
+    private final int[] offsets; // начало сжатых данных блока в data
+    private final byte[] data;
+
+    // последний распакованный блок; объект неизменяем, поэтому гонка
+    // между потоками приводит лишь к лишней распаковке
+    private transient volatile Block cached;
+
+    private static final class Block {
+        final int index;
+        final double[] xs; // null для равномерной сетки
+        final double[] ys;
+
+        Block(int index, double[] xs, double[] ys) {
+            this.index = index;
+            this.xs = xs;
+            this.ys = ys;
+        }
+    }
+
+    private CompressedTabulatedFunction(int count, double leftX, double rightX, boolean uniform, int blockSize,
+            double[] firstXs, double[] firstYs, int[] offsets, byte[] data) {
+        this.count = count;
+        this.leftX = leftX;
+        this.rightX = rightX;
+        this.uniform = uniform;
+        this.blockSize = blockSize;
+        this.firstXs = firstXs;
+        this.firstYs = firstYs;
+        this.offsets = offsets;
+        this.data = data;
+    }
+
+    // сжимает точки функции
+    public static CompressedTabulatedFunction compress(TabulatedFunction function) {
+        int count = function.getPointsCount();
+        if (count < 2) {
+            throw new IllegalArgumentException("Length must be more than 2");
+        }
+        boolean uniform = TabulatedArrays.isExactGrid(function);
+        int blocks = (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        double[] firstXs = uniform ? null : new double[blocks];
+        double[] firstYs = new double[blocks];
+        int[] offsets = new int[blocks];
+        BitWriter bits = new BitWriter();
+
+        for (int b = 0; b < blocks; b++) {
+            int from = b * BLOCK_SIZE;
+            int to = Math.min(from + BLOCK_SIZE, count);
+            offsets[b] = bits.bytes();
+            if (!uniform) {
+                firstXs[b] = function.getPointX(from);
+                XorCoder coder = new XorCoder(firstXs[b]);
+                for (int i = from + 1; i < to; i++) {
+                    coder.encode(bits, function.getPointX(i));
+                }
+            }
+            firstYs[b] = function.getPointY(from);
+            XorCoder coder = new XorCoder(firstYs[b]);
+            for (int i = from + 1; i < to; i++) {
+                coder.encode(bits, function.getPointY(i));
+            }
+            bits.alignToByte();
+        }
+        return new CompressedTabulatedFunction(count, function.getPointX(0), function.getPointX(count - 1), uniform,
+                BLOCK_SIZE, firstXs, firstYs, offsets, bits.toByteArray());
+    }
+
+    void write(OutputStream out) throws IOException {
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(MAGIC);
+        dataOut.writeInt(VERSION);
+        dataOut.writeInt(uniform ? MappedTabulatedFunction.GRID_UNIFORM : MappedTabulatedFunction.GRID_GENERAL);
+        dataOut.writeInt(count);
+        dataOut.writeDouble(leftX);
+        dataOut.writeDouble(rightX);
+        dataOut.writeInt(blockSize);
+        dataOut.writeInt(offsets.length);
+        for (int b = 0; b < offsets.length; b++) {
+            if (!uniform) {
+                dataOut.writeDouble(firstXs[b]);
+            }
+            dataOut.writeDouble(firstYs[b]);
+            dataOut.writeInt(offsets[b]);
+        }
+        dataOut.writeInt(data.length);
+        dataOut.write(data);
+        dataOut.flush();
+    }
+
+    static CompressedTabulatedFunction read(InputStream in) throws IOException {
+        DataInputStream dataIn = new DataInputStream(in);
+        if (dataIn.readInt() != MAGIC) {
+            throw new IOException("Not a compressed tabulated function");
+        }
+        int version = dataIn.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported format version " + version);
+        }
+        int grid = dataIn.readInt();
+        if (grid != MappedTabulatedFunction.GRID_GENERAL && grid != MappedTabulatedFunction.GRID_UNIFORM) {
+            throw new IOException("Unknown grid kind " + grid);
+        }
+        boolean uniform = grid == MappedTabulatedFunction.GRID_UNIFORM;
+        int count = dataIn.readInt();
+        double left = dataIn.readDouble();
+        double right = dataIn.readDouble();
+        int blockSize = dataIn.readInt();
+        int blocks = dataIn.readInt();
+        if (count < 2 || blockSize < 1 || blocks != (int) ((count + (long) blockSize - 1) / blockSize)
+                || !(left < right)) {
+            throw new IOException("Corrupted header");
+        }
+        double[] firstXs = uniform ? null : new double[blocks];
+        double[] firstYs = new double[blocks];
+        int[] offsets = new int[blocks];
+        for (int b = 0; b < blocks; b++) {
+            if (!uniform) {
+                firstXs[b] = dataIn.readDouble();
+            }
+            firstYs[b] = dataIn.readDouble();
+            offsets[b] = dataIn.readInt();
+        }
+        int length = dataIn.readInt();
+        if (length < 0) {
+            throw new IOException("Corrupted header");
+        }
+        byte[] data = new byte[length];
+        dataIn.readFully(data);
+        for (int b = 0; b < blocks; b++) {
+            if (offsets[b] < 0 || offsets[b] > length || (b > 0 && offsets[b] < offsets[b - 1])) {
+                throw new IOException("Corrupted block offset " + offsets[b]);
+            }
+            if (!uniform && (b == 0 ? firstXs[0] != left : !(firstXs[b] > firstXs[b - 1]))) {
+                throw new IOException("Points must be sorted by X");
+            }
+        }
+        // сами блоки при чтении не распаковываются: сжатые данные блока
+        // проверяет decode при первом обращении к нему
+        return new CompressedTabulatedFunction(count, left, right, uniform, blockSize, firstXs, firstYs, offsets, data);
+    }
+
+    public boolean isUniformGrid() {
+        return uniform;
+    }
+
+    // размер сжатых данных в байтах (без индекса блоков)
+    public int getCompressedSize() {
+        return data.length;
+    }
+
+    private Block block(int b) {
+        Block block = cached;
+        if (block != null && block.index == b) {
+            return block;
+        }
+        block = decode(b);
+        cached = block;
+        return block;
+    }
+
+    /*
+     * Распаковывает блок и проверяет его. Повреждённые сжатые данные
+     * обнаруживаются только здесь, при первом обращении к блоку, и
+     * выбрасываются как UncheckedIOException: чтение (read) проверяет лишь
+     * заголовок, смещения и первые абсциссы блоков.
+     */
+    private Block decode(int b) {
+        int from = b * blockSize;
+        int n = Math.min(blockSize, count - from);
+        BitReader bits = new BitReader(data, offsets[b]);
+        double[] xs = null;
+        double[] ys = new double[n];
+        try {
+            if (!uniform) {
+                xs = new double[n];
+                XorCoder coder = new XorCoder(firstXs[b]);
+                xs[0] = firstXs[b];
+                for (int i = 1; i < n; i++) {
+                    xs[i] = coder.decode(bits);
+                }
+            }
+            XorCoder coder = new XorCoder(firstYs[b]);
+            ys[0] = firstYs[b];
+            for (int i = 1; i < n; i++) {
+                ys[i] = coder.decode(bits);
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new UncheckedIOException(new IOException("Compressed data of block " + b + " is truncated"));
+        }
+        if (!uniform) {
+            checkBlockXs(b, xs);
+        }
+        return new Block(b, xs, ys);
+    }
+
+    // абсциссы блока строго возрастают и меньше первой абсциссы следующего
+    // блока; последняя абсцисса последнего блока совпадает с правой границей
+    private void checkBlockXs(int b, double[] xs) {
+        for (int i = 1; i < xs.length; i++) {
+            if (!(xs[i] > xs[i - 1])) {
+                throw new UncheckedIOException(new IOException("Points of block " + b + " must be sorted by X"));
+            }
+        }
+        double last = xs[xs.length - 1];
+        if (b + 1 < firstXs.length ? !(last < firstXs[b + 1]) : last != rightX) {
+            throw new UncheckedIOException(new IOException("Points of block " + b + " must be sorted by X"));
+        }
+    }
+
+    private double x(int i) {
+        if (uniform) {
+            return (i == count - 1) ? rightX : leftX + i * ((rightX - leftX) / (count - 1));
+        }
+        if (i % blockSize == 0) {
+            return firstXs[i / blockSize];
+        }
+        return block(i / blockSize).xs[i % blockSize];
+    }
+
+    private double y(int i) {
+        if (i % blockSize == 0) {
+            return firstYs[i / blockSize];
+        }
+        return block(i / blockSize).ys[i % blockSize];
+    }
+
+    public double getLeftDomainBorder() {
+        return leftX;
+    }
+
+    public double getRightDomainBorder() {
+        return rightX;
+    }
+
+    public int getPointsCount() {
+        return count;
+    }
+
+    public double getFunctionValue(double x) {
+        if ((x > rightX && Math.abs(x - rightX) > EPSILON) ||
+                (x < leftX && Math.abs(x - leftX) > EPSILON))
+            return Double.NaN;
+
+        int i = findInterval(x);
+        double x0 = x(i);
+        double x1 = x(i + 1);
+        if (Math.abs(x - x0) < EPSILON)
+            return y(i);
+        if (Math.abs(x - x1) < EPSILON)
+            return y(i + 1);
+        return TabulatedArrays.interpolate(x, x0, y(i), x1, y(i + 1));
+    }
+
+    // индекс левого конца интервала, содержащего x (как TabulatedArrays.findInterval):
+    // блок ищется по первым абсциссам блоков, затем интервал - внутри блока
+    private int findInterval(double x) {
+        int last = count - 2;
+        if (uniform) {
+            int i = (int) ((x - leftX) / ((rightX - leftX) / (count - 1)));
+            i = Math.max(0, Math.min(i, last));
+            // поправка на погрешность вычисления индекса
+            while (i > 0 && x(i) > x) {
+                i--;
+            }
+            while (i < last && x(i + 1) <= x) {
+                i++;
+            }
+            return i;
+        }
+        int b = Arrays.binarySearch(firstXs, x);
+        if (b < 0) {
+            b = Math.max(0, -b - 2);
+        }
+        double[] xs = block(b).xs;
+        int low = 0;
+        int high = xs.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (xs[mid] <= x) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return Math.min(b * blockSize + low, last);
+    }
+
+    public FunctionPoint getPoint(int index) {
+        checkIndex(index);
+        return new FunctionPoint(x(index), y(index));
+    }
+
+    public double getPointX(int index) {
+        checkIndex(index);
+        return x(index);
+    }
+
+    public double getPointY(int index) {
+        checkIndex(index);
+        return y(index);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new FunctionPointIndexOutOfBoundsException();
+        }
+    }
+
+    public void setPoint(int index, FunctionPoint point) {
+        throw new UnsupportedOperationException("Compressed function is read-only");
+    }
+
+    public void setPointX(int index, double x) {
+        throw new UnsupportedOperationException("Compressed function is read-only");
+    }
+
+    public void setPointY(int index, double y) {
+        throw new UnsupportedOperationException("Compressed function is read-only");
+    }
+
+    public void deletePoint(int index) {
+        throw new UnsupportedOperationException("Compressed function is read-only");
+    }
+
+    public void addPoint(FunctionPoint point) {
+        throw new UnsupportedOperationException("Compressed function is read-only");
+    }
+
+    public void addPoints(double[] newXs, double[] newYs, PointConflictPolicy policy) {
+        throw new UnsupportedOperationException("Compressed function is read-only");
+    }
+
+    // XOR-кодирование столбца: значение сравнивается с предсказанием
+    // 2 * prev - prevprev, совпадающие старшие и младшие биты не записываются.
+    // Управляющие биты: 0 - совпало с предсказанием; 10 - значащие биты
+    // помещаются в окно предыдущего значения; 11 - новое окно (5 бит
+    // ведущих нулей, 6 бит длины), затем значащие биты
+    private static final class XorCoder {
+        private double previous;
+        private double beforePrevious = Double.NaN;
+        private int leading = -1;
+        private int trailing;
+
+        XorCoder(double first) {
+            this.previous = first;
+        }
+
+        private long predictionBits() {
+            double prediction = 2 * previous - beforePrevious;
+            if (Double.isNaN(prediction) || Double.isInfinite(prediction)) {
+                prediction = previous;
+            }
+            return Double.doubleToRawLongBits(prediction);
+        }
+
+        private void accept(double value) {
+            beforePrevious = previous;
+            previous = value;
+        }
+
+        void encode(BitWriter bits, double value) {
+            long xor = Double.doubleToRawLongBits(value) ^ predictionBits();
+            accept(value);
+            if (xor == 0) {
+                bits.write(0, 1);
+                return;
+            }
+            int lead = Math.min(Long.numberOfLeadingZeros(xor), 31);
+            int trail = Long.numberOfTrailingZeros(xor);
+            if (leading >= 0 && lead >= leading && trail >= trailing) {
+                bits.write(0b10, 2);
+                bits.write(xor >>> trailing, 64 - leading - trailing);
+                return;
+            }
+            int significant = 64 - lead - trail;
+            bits.write(0b11, 2);
+            bits.write(lead, 5);
+            bits.write(significant & 63, 6); // 64 записывается как 0
+            bits.write(xor >>> trail, significant);
+            leading = lead;
+            trailing = trail;
+        }
+
+        double decode(BitReader bits) {
+            long xor;
+            if (bits.read(1) == 0) {
+                xor = 0;
+            } else if (bits.read(1) == 0) {
+                xor = bits.read(64 - leading - trailing) << trailing;
+            } else {
+                leading = (int) bits.read(5);
+                int significant = (int) bits.read(6);
+                if (significant == 0) {
+                    significant = 64;
+                }
+                trailing = 64 - leading - significant;
+                xor = bits.read(significant) << trailing;
+            }
+            double value = Double.longBitsToDouble(xor ^ predictionBits());
+            accept(value);
+            return value;
+        }
+    }
+
+    // запись битов старшими вперёд в растущий массив байтов
+    private static final class BitWriter {
+        private byte[] bytes = new byte[1024];
+        private int size;
+        private long accumulator;
+        private int bits; // число битов в accumulator (меньше 8 после записи)
+
+        void write(long value, int n) {
+            while (n > 0) {
+                int take = Math.min(n, 56 - bits);
+                long part = (value >>> (n - take)) & ((1L << take) - 1);
+                accumulator = (accumulator << take) | part;
+                bits += take;
+                n -= take;
+                while (bits >= 8) {
+                    bits -= 8;
+                    put((byte) (accumulator >>> bits));
+                }
+            }
+        }
+
+        // дополняет последний байт нулями, чтобы следующий блок начинался с границы байта
+        void alignToByte() {
+            if (bits > 0) {
+                put((byte) (accumulator << (8 - bits)));
+                bits = 0;
+            }
+            accumulator = 0;
+        }
+
+        int bytes() {
+            return size;
+        }
+
+        private void put(byte b) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, size * 2);
+            }
+            bytes[size++] = b;
+        }
+
+        byte[] toByteArray() {
+            alignToByte();
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+
+    // чтение битов старшими вперёд
+    private static final class BitReader {
+        private final byte[] data;
+        private int position;
+        private int current;
+        private int available; // непрочитанных битов в current
+
+        BitReader(byte[] data, int offset) {
+            this.data = data;
+            this.position = offset;
+        }
+
+        long read(int n) {
+            long result = 0;
+            while (n > 0) {
+                if (available == 0) {
+                    current = data[position++] & 0xFF;
+                    available = 8;
+                }
+                int take = Math.min(n, available);
+                result = (result << take) | ((current >>> (available - take)) & ((1 << take) - 1));
+                available -= take;
+                n -= take;
+            }
+            return result;
+        }
+    }
+
+}
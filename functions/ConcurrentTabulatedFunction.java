@@ -0,0 +1,229 @@
+package functions;
+
+import java.util.concurrent.locks.StampedLock;
+
+// Потокобезопасная табулированная функция поверх ArrayTabulatedFunction.
+// Чтение выполняется оптимистично (StampedLock.tryOptimisticRead): читатели
+// не берут блокировку и не мешают друг другу, а результат принимается, только
+// если за время чтения не было записи. Иначе чтение повторяется под обычной
+// блокировкой чтения. Изменения выполняются под блокировкой записи и
+// линеаризуемы: каждое из них видно читателям целиком или не видно вовсе
+public class ConcurrentTabulatedFunction implements TabulatedFunction {
+    private static final long serialVersionUID = 1L;
+
+    // операции чтения для read: код и аргументы вместо лямбды, чтобы на
+    // пути читателя не было ни выделения памяти, ни косвенного вызова
+    private static final int VALUE = 0;
+    private static final int POINT_X = 1;
+    private static final int POINT_Y = 2;
+
+    private final ArrayTabulatedFunction function;
+    private final transient StampedLock lock = new StampedLock();
+
+    // копирует точки исходной функции
+    public ConcurrentTabulatedFunction(TabulatedFunction source) {
+        int count = source.getPointsCount();
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = source.getPointX(i);
+            ys[i] = source.getPointY(i);
+        }
+        this.function = new ArrayTabulatedFunction(xs, ys);
+    }
+
+    public ConcurrentTabulatedFunction(double leftX, double rightX, int pointsCount) {
+        this.function = new ArrayTabulatedFunction(leftX, rightX, pointsCount);
+    }
+
+    public ConcurrentTabulatedFunction(double leftX, double rightX, double[] values) {
+        this.function = new ArrayTabulatedFunction(leftX, rightX, values);
+    }
+
+    // сериализуется копия, снятая под блокировкой чтения: иначе запись в
+    // другом потоке могла бы попасть в поток наполовину выполненной
+    private Object writeReplace() {
+        long stamp = lock.readLock();
+        try {
+            return new ConcurrentTabulatedFunction(function);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // блокировка не сериализуется: после чтения объект пересоздаётся с новой
+    private Object readResolve() {
+        return new ConcurrentTabulatedFunction(function);
+    }
+
+    /*
+     * Оптимистичное чтение: операция выполняется без блокировки и
+     * принимается, если за это время не было записи. Иначе (в том числе
+     * если чтение несогласованных массивов бросило исключение) она
+     * повторяется под блокировкой чтения.
+     */
+    private double read(int operation, double x, int index) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            try {
+                double value = readUnlocked(operation, x, index);
+                if (lock.validate(stamp)) {
+                    return value;
+                }
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return readUnlocked(operation, x, index);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private double readUnlocked(int operation, double x, int index) {
+        switch (operation) {
+            case VALUE:
+                return function.getFunctionValue(x);
+            case POINT_X:
+                return function.getPointX(index);
+            default:
+                return function.getPointY(index);
+        }
+    }
+
+    public double getFunctionValue(double x) {
+        return read(VALUE, x, 0);
+    }
+
+    public double getPointX(int index) {
+        return read(POINT_X, 0, index);
+    }
+
+    public double getPointY(int index) {
+        return read(POINT_Y, 0, index);
+    }
+
+    public FunctionPoint getPoint(int index) {
+        long stamp = lock.readLock();
+        try {
+            return function.getPoint(index);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // то же оптимистичное чтение для целого значения
+    public int getPointsCount() {
+        long stamp = lock.tryOptimisticRead();
+        int count = function.getPointsCount();
+        if (lock.validate(stamp)) {
+            return count;
+        }
+        stamp = lock.readLock();
+        try {
+            return function.getPointsCount();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public double getLeftDomainBorder() {
+        long stamp = lock.readLock();
+        try {
+            return function.getLeftDomainBorder();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public double getRightDomainBorder() {
+        long stamp = lock.readLock();
+        try {
+            return function.getRightDomainBorder();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // пакет вычисляется под блокировкой чтения: при совпадении массивов
+    // in и out оптимистичную попытку нельзя было бы повторить
+    @Override
+    public void evaluate(double[] in, int inOffset, double[] out, int outOffset, int length) {
+        long stamp = lock.readLock();
+        try {
+            function.evaluate(in, inOffset, out, outOffset, length);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public TabulatedFunction freeze() {
+        long stamp = lock.readLock();
+        try {
+            return function.freeze();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public void setPoint(int index, FunctionPoint point) throws InappropriateFunctionPointException {
+        long stamp = lock.writeLock();
+        try {
+            function.setPoint(index, point);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void setPointX(int index, double x) throws InappropriateFunctionPointException {
+        long stamp = lock.writeLock();
+        try {
+            function.setPointX(index, x);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void setPointY(int index, double y) {
+        long stamp = lock.writeLock();
+        try {
+            function.setPointY(index, y);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void deletePoint(int index) {
+        long stamp = lock.writeLock();
+        try {
+            function.deletePoint(index);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void addPoint(FunctionPoint point) throws InappropriateFunctionPointException {
+        long stamp = lock.writeLock();
+        try {
+            function.addPoint(point);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void addPoints(double[] xs, double[] ys, PointConflictPolicy policy)
+            throws InappropriateFunctionPointException {
+        long stamp = lock.writeLock();
+        try {
+            function.addPoints(xs, ys, policy);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+}
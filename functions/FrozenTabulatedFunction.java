@@ -0,0 +1,127 @@
+package functions;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamException;
+import java.util.Arrays;
+
+// Неизменяемый снимок табулированной функции. Все поля final и массивы
+// никогда не изменяются после конструктора, поэтому объект можно передавать
+// любому числу потоков без блокировок: модель памяти Java гарантирует, что
+// они увидят полностью построенные массивы. Методы изменения точек
+// выбрасывают UnsupportedOperationException
+public final class FrozenTabulatedFunction implements TabulatedFunction {
+    private static final long serialVersionUID = 1L;
+
+    private final double[] xs;
+    private final double[] ys;
+    private final boolean uniform;
+
+    // принимает массивы во владение: вызывающий код пакета больше их не изменяет
+    FrozenTabulatedFunction(double[] xs, double[] ys) {
+        this.xs = xs;
+        this.ys = ys;
+        this.uniform = TabulatedArrays.isUniform(xs, xs.length);
+    }
+
+    @Override
+    public TabulatedFunction freeze() {
+        return this;
+    }
+
+    // сериализуется через TabulatedFunctionProxy; массивы не изменяются,
+    // поэтому копировать их не нужно
+    private Object writeReplace() throws ObjectStreamException {
+        return new TabulatedFunctionProxy(TabulatedFunctionProxy.FROZEN, xs, ys);
+    }
+
+    // объект читается только через TabulatedFunctionProxy с проверкой точек
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("Serialization proxy required");
+    }
+
+    public double getLeftDomainBorder() {
+        return xs[0];
+    }
+
+    public double getRightDomainBorder() {
+        return xs[xs.length - 1];
+    }
+
+    public double getFunctionValue(double x) {
+        return TabulatedArrays.valueAt(xs, ys, xs.length, x, uniform);
+    }
+
+    @Override
+    public void evaluate(double[] in, int inOffset, double[] out, int outOffset, int length) {
+        TabulatedArrays.evaluate(xs, ys, xs.length, uniform, in, inOffset, out, outOffset, length);
+    }
+
+    public int getPointsCount() {
+        return xs.length;
+    }
+
+    public FunctionPoint getPoint(int index) {
+        checkIndex(index);
+        return new FunctionPoint(xs[index], ys[index]);
+    }
+
+    public double getPointX(int index) {
+        checkIndex(index);
+        return xs[index];
+    }
+
+    public double getPointY(int index) {
+        checkIndex(index);
+        return ys[index];
+    }
+
+    // сами массивы для чтения внутри пакета (без копирования)
+    double[] xs() {
+        return xs;
+    }
+
+    double[] ys() {
+        return ys;
+    }
+
+    // копии массивов абсцисс и ординат
+    public double[] getXs() {
+        return Arrays.copyOf(xs, xs.length);
+    }
+
+    public double[] getYs() {
+        return Arrays.copyOf(ys, ys.length);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= xs.length) {
+            throw new FunctionPointIndexOutOfBoundsException();
+        }
+    }
+
+    public void setPoint(int index, FunctionPoint point) {
+        throw new UnsupportedOperationException("Frozen function cannot be modified");
+    }
+
+    public void setPointX(int index, double x) {
+        throw new UnsupportedOperationException("Frozen function cannot be modified");
+    }
+
+    public void setPointY(int index, double y) {
+        throw new UnsupportedOperationException("Frozen function cannot be modified");
+    }
+
+    public void deletePoint(int index) {
+        throw new UnsupportedOperationException("Frozen function cannot be modified");
+    }
+
+    public void addPoint(FunctionPoint point) {
+        throw new UnsupportedOperationException("Frozen function cannot be modified");
+    }
+
+    public void addPoints(double[] newXs, double[] newYs, PointConflictPolicy policy) {
+        throw new UnsupportedOperationException("Frozen function cannot be modified");
+    }
+
+}
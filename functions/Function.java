@@ -22,4 +22,21 @@ public interface Function {
 
     public double getFunctionValue(double x);
 
+    /*
+     * Пакетное вычисление: out[outOffset + i] = f(xs[xsOffset + i]) для i из
+     * [0, length). Массивы xs и out могут совпадать (при равных смещениях).
+     * Реализация по умолчанию вызывает getFunctionValue для каждой точки,
+     * классы пакета переопределяют её плотными циклами по массивам.
+     */
+    public default void evaluate(double[] xs, int xsOffset, double[] out, int outOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            out[outOffset + i] = getFunctionValue(xs[xsOffset + i]);
+        }
+    }
+
+    // вычисляет значения функции во всех точках массива xs
+    public default void evaluate(double[] xs, double[] out) {
+        evaluate(xs, 0, out, 0, xs.length);
+    }
+
 }
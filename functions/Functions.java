@@ -20,6 +20,9 @@ public class Functions {
      /* `public static Function shift(Function f, double shiftX, double shiftY)` –
      * возвращает объект функции, полученной из исходной сдвигом вдоль осей;
      */
+     // вложенные сдвиги сливает конструктор Shift, если сумма смещений
+     // точна (аргумент может сдвинуться на единицу последнего разряда).
+     // Нулевой сдвиг не отбрасывается: прибавление 0 превращает -0.0 в 0.0
      public static Function shift(Function f, double shiftX, double shiftY) {
          return new Shift(f, shiftX, shiftY);
     }
@@ -29,14 +32,25 @@ public class Functions {
      * возвращает объект функции, полученной из исходной масштабированием вдоль
      * осей;
      */
+     // единичный масштаб не создаёт обёртку (деление и умножение на 1 точны);
+     // вложенные масштабы сливает конструктор Scale, если произведение
+     // коэффициентов точно (с тем же отличием в последнем разряде)
      public static Function scale(Function f, double scaleX, double scaleY) {
+         if (scaleX == 1 && scaleY == 1) {
+             return f;
+         }
          return new Scale(f, scaleX, scaleY);
     }
      /*
      * `public static Function power(Function f, double power)` – возвращает объект
      * функции, являющейся заданной степенью исходной;
      */
+     // первая степень - сама функция; степени 2, 3, 0.5 и -1 Power
+     // вычисляет умножением, Math.sqrt и делением вместо Math.pow
      public static Function power(Function f, double power) {
+         if (power == 1) {
+             return f;
+         }
          return new Power(f, power);
     }
     /*
@@ -58,8 +72,57 @@ public class Functions {
      * объект функции, являющейся композицией двух исходных.
      */
 
+    /*
+     * Внешняя тождественная функция на всей прямой отбрасывается - это не
+     * меняет ни одного значения, как и единичный масштаб и первая степень.
+     * Сокращения вида log(exp(x)) = x не выполняются: exp переполняется при
+     * больших x, а ln(x) даёт NaN при x < 0, и сокращённая форма отличалась
+     * бы не только в последних разрядах. Единственное упрощение, меняющее
+     * округление, - слияние вложенных Shift и Scale в их конструкторах при
+     * точных константах (аргумент - до единицы последнего разряда).
+     */
     public static Function composition(Function f1, Function f2) {
+        if (f1.getClass() == Identity.class && ((Identity) f1).isUnbounded()) {
+            return f2;
+        }
         return new Composition(f1, f2);
     }
 
+    /*
+     * Оптимизированная форма дерева функций (FusedFunction): сдвиги и
+     * масштабирования сливаются, суммы и произведения разворачиваются,
+     * константы сворачиваются. Листья дерева используются без копирования.
+     */
+    public static Function optimize(Function f) {
+        return new FusedFunction(f);
+    }
+
+    /*
+     * То же дерево, скомпилированное во время выполнения в отдельный класс
+     * (FunctionCompiler): вычисление - линейный код без виртуальных вызовов
+     * между узлами. Значения совпадают с optimize(f).
+     */
+    public static Function compile(Function f) {
+        return FunctionCompiler.compile(f);
+    }
+
+    /*
+     * План вычисления дерева (EvaluationPlan), в котором общие подвыражения -
+     * один и тот же объект в нескольких местах дерева или одинаковые базовые
+     * функции от одного аргумента - вычисляются один раз. Значения совпадают
+     * с исходным деревом.
+     */
+    public static EvaluationPlan plan(Function f) {
+        return new EvaluationPlan(f);
+    }
+
+    /*
+     * Функция, запоминающая до capacity последних значений f
+     * (CachedFunction). Полезна, когда дорогую функцию многократно вычисляют
+     * в одних и тех же точках; статистика попаданий - у возвращаемого объекта.
+     */
+    public static CachedFunction cache(Function f, int capacity) {
+        return new CachedFunction(f, capacity);
+    }
+
 }
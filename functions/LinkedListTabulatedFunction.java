@@ -2,8 +2,14 @@ package functions;
 
 import java.io.Externalizable;
 import java.io.IOException;
+import java.io.InvalidObjectException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.io.ObjectStreamException;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
 
 public class LinkedListTabulatedFunction implements TabulatedFunction, Externalizable {
 
@@ -11,8 +17,16 @@ public class LinkedListTabulatedFunction implements TabulatedFunction, Externali
 
     private FunctionNode head; // Ссылка на фиктивную "голову" списка
     private int count; // Количество элементов в списке
+    private boolean uniform; // true, если абсциссы образуют равномерную сетку
     private static final double EPSILON = 1e-9;
 
+    // Курсор: последний узел, полученный по индексу, и его номер.
+    // Последовательные обращения по соседним индексам проходят от курсора
+    // за O(1), поэтому цикл по всем индексам работает за линейное время
+    private transient FunctionNode cursor;
+    private transient int cursorIndex = -1; // -1, если курсор не установлен
+    private transient int modCount; // число структурных изменений (для итераторов)
+
     // Внутренний класс узла списка
     private static class FunctionNode implements java.io.Serializable {
         private static final long serialVersionUID = 1L;
@@ -41,6 +55,12 @@ public class LinkedListTabulatedFunction implements TabulatedFunction, Externali
         count = 0;
     }
 
+    // сбрасывает курсор (например, после пересоздания списка)
+    private void resetCursor() {
+        cursor = null;
+        cursorIndex = -1;
+    }
+
     public LinkedListTabulatedFunction(FunctionPoint[] array) {
         if (array.length < 2) {
             throw new IllegalArgumentException("Length must be more than 2");
@@ -59,6 +79,7 @@ public class LinkedListTabulatedFunction implements TabulatedFunction, Externali
             }
             addNodeToTail().val = new FunctionPoint(array[i]);
         }
+        uniform = checkUniform();
     }
 
     public LinkedListTabulatedFunction(double leftX, double rightX, int pointsCount) {
@@ -78,6 +99,7 @@ public class LinkedListTabulatedFunction implements TabulatedFunction, Externali
             double x = leftX + step * i;
             addNodeToTail().val = new FunctionPoint(x, 0);
         }
+        uniform = true;
     }
 
     public LinkedListTabulatedFunction(double leftX, double rightX, double[] values) {
@@ -97,6 +119,17 @@ public class LinkedListTabulatedFunction implements TabulatedFunction, Externali
             double x = leftX + step * i;
             addNodeToTail().val = new FunctionPoint(x, values[i]);
         }
+        uniform = true;
+    }
+
+    // строит список из проверенных вызывающим кодом пакета массивов точек
+    LinkedListTabulatedFunction(double[] xs, double[] ys) {
+        head = new FunctionNode();
+        count = 0;
+        for (int i = 0; i < xs.length; i++) {
+            addNodeToTail().val = new FunctionPoint(xs[i], ys[i]);
+        }
+        uniform = checkUniform();
     }
 
     public FunctionNode getNodeByIndex(int index) {
@@ -104,10 +137,20 @@ public class LinkedListTabulatedFunction implements TabulatedFunction, Externali
             throw new FunctionPointIndexOutOfBoundsException();
         }
 
-        FunctionNode current;
+        // Проход начинается с ближайшего из трёх мест: голова, хвост или курсор
+        int fromTail = count - 1 - index;
+        int fromCursor = (cursorIndex < 0) ? Integer.MAX_VALUE : Math.abs(index - cursorIndex);
 
-        // Оптимизация поиска
-        if (index < count / 2) {
+        FunctionNode current;
+        if (fromCursor <= index && fromCursor <= fromTail) {
+            current = cursor;
+            for (int i = cursorIndex; i < index; i++) {
+                current = current.next;
+            }
+            for (int i = cursorIndex; i > index; i--) {
+                current = current.prev;
+            }
+        } else if (index <= fromTail) {
             current = head.next;
             for (int i = 0; i < index; i++) {
                 current = current.next;
@@ -118,6 +161,9 @@ public class LinkedListTabulatedFunction implements TabulatedFunction, Externali
                 current = current.prev;
             }
         }
+
+        cursor = current;
+        cursorIndex = index;
         return current;
     }
 
@@ -132,6 +178,8 @@ public class LinkedListTabulatedFunction implements TabulatedFunction, Externali
         head.prev = newNode;
 
         count++;
+        modCount++;
+        // узлы перед хвостом не сдвигаются, курсор остаётся верным
         return newNode;
     }
 
@@ -146,6 +194,10 @@ public class LinkedListTabulatedFunction implements TabulatedFunction, Externali
         nextNode.prev = newNode;
 
         count++;
+        modCount++;
+        // курсор переносится на вставленный узел
+        cursor = newNode;
+        cursorIndex = index;
         return newNode;
     }
 
@@ -167,6 +219,17 @@ public class LinkedListTabulatedFunction implements TabulatedFunction, Externali
         nodeToDelete.next = null;
 
         count--;
+        modCount++;
+        // курсор переносится на узел, занявший место удалённого (или на предыдущий)
+        if (count == 0) {
+            resetCursor();
+        } else if (index < count) {
+            cursor = nextNode;
+            cursorIndex = index;
+        } else {
+            cursor = prevNode;
+            cursorIndex = index - 1;
+        }
         return data;
     }
 
@@ -194,9 +257,49 @@ public class LinkedListTabulatedFunction implements TabulatedFunction, Externali
         if (count == 0)
             return Double.NaN;
 
+        return valueAt(x, getLeftDomainBorder(), getRightDomainBorder());
+    }
+
+    // пакетное вычисление: границы области определения читаются один раз.
+    // Возрастающие точки запроса обрабатываются одним проходом по списку
+    // за O(n + m), иначе интервал ищется для каждой точки отдельно
+    @Override
+    public void evaluate(double[] xs, int xsOffset, double[] out, int outOffset, int length) {
+        if (count == 0) {
+            Arrays.fill(out, outOffset, outOffset + length, Double.NaN);
+            return;
+        }
         double left = getLeftDomainBorder();
         double right = getRightDomainBorder();
 
+        if (!TabulatedArrays.isAscending(xs, xsOffset, length)) {
+            for (int i = 0; i < length; i++) {
+                out[outOffset + i] = valueAt(xs[xsOffset + i], left, right);
+            }
+            return;
+        }
+
+        FunctionNode current = head.next;
+        FunctionNode last = head.prev.prev; // последний узел, у которого есть следующий
+        for (int i = 0; i < length; i++) {
+            double x = xs[xsOffset + i];
+            if (x < left - EPSILON || x > right + EPSILON) {
+                out[outOffset + i] = Double.NaN;
+            } else if (Math.abs(x - left) < EPSILON) {
+                out[outOffset + i] = head.next.val.getY();
+            } else if (Math.abs(x - right) < EPSILON) {
+                out[outOffset + i] = head.prev.val.getY();
+            } else {
+                while (current != last && current.next.val.getX() <= x) {
+                    current = current.next;
+                }
+                out[outOffset + i] = valueInNode(current, x);
+            }
+        }
+    }
+
+    // значение функции в точке x при известных границах непустого списка
+    private double valueAt(double x, double left, double right) {
         if (x < left - EPSILON || x > right + EPSILON) {
             return Double.NaN;
         }
@@ -206,24 +309,62 @@ public class LinkedListTabulatedFunction implements TabulatedFunction, Externali
         if (Math.abs(x - right) < EPSILON)
             return head.prev.val.getY();
 
-        FunctionNode current = head.next;
-        while (current != head.prev) {
-            double currentX = current.val.getX();
-            double nextX = current.next.val.getX();
+        return valueInNode(findIntervalNode(x, left, right), x);
+    }
 
-            if (Math.abs(currentX - x) < EPSILON)
-                return current.val.getY();
+    // значение в точке x, лежащей в интервале [current, current.next]
+    private double valueInNode(FunctionNode current, double x) {
+        double currentX = current.val.getX();
+        double nextX = current.next.val.getX();
 
-            if (currentX < x && nextX > x) {
-                return linearInterpolation(x, currentX, current.val.getY(), nextX, current.next.val.getY());
-            }
-            current = current.next;
+        if (Math.abs(currentX - x) < EPSILON)
+            return current.val.getY();
+        if (Math.abs(nextX - x) < EPSILON)
+            return current.next.val.getY();
+
+        return linearInterpolation(x, currentX, current.val.getY(), nextX, current.next.val.getY());
+    }
+
+    // возвращает узел, являющийся левым концом интервала, содержащего x.
+    // На равномерной сетке номер узла вычисляется сразу, иначе список
+    // проходится с того конца, к которому x ближе
+    private FunctionNode findIntervalNode(double x, double left, double right) {
+        FunctionNode first = head.next;
+        FunctionNode last = head.prev.prev; // последний узел, у которого есть следующий
+
+        FunctionNode current;
+        if (uniform) {
+            int index = (int) ((x - left) / ((right - left) / (count - 1)));
+            current = getNodeByIndex(Math.max(0, Math.min(index, count - 2)));
+        } else if (x - left <= right - x) {
+            current = first;
+        } else {
+            current = last;
         }
 
-        if (Math.abs(head.prev.val.getX() - x) < EPSILON)
-            return head.prev.val.getY();
+        while (current != first && current.val.getX() > x) {
+            current = current.prev;
+        }
+        while (current != last && current.next.val.getX() <= x) {
+            current = current.next;
+        }
+        return current;
+    }
 
-        return Double.NaN;
+    // проверяет, что абсциссы узлов образуют равномерную сетку
+    private boolean checkUniform() {
+        if (count < 2) {
+            return false;
+        }
+        double left = head.next.val.getX();
+        double step = (head.prev.val.getX() - left) / (count - 1);
+        int i = 0;
+        for (FunctionNode node = head.next; node != head; node = node.next, i++) {
+            if (!TabulatedArrays.isGridPoint(node.val.getX(), left, step, i)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public FunctionPoint getPoint(int index) {
@@ -241,6 +382,9 @@ public class LinkedListTabulatedFunction implements TabulatedFunction, Externali
             throw new InappropriateFunctionPointException();
         }
 
+        if (newX != node.val.getX()) {
+            uniform = false;
+        }
         node.val = new FunctionPoint(point);
     }
 
@@ -260,6 +404,9 @@ public class LinkedListTabulatedFunction implements TabulatedFunction, Externali
         if (x <= prevX + EPSILON || x >= nextX - EPSILON) {
             throw new InappropriateFunctionPointException();
         }
+        if (x != node.val.getX()) {
+            uniform = false;
+        }
         node.val.setX(x);
     }
 
@@ -272,12 +419,14 @@ public class LinkedListTabulatedFunction implements TabulatedFunction, Externali
             throw new IllegalStateException("Number of points is less than 3");
         }
         deleteNodeByIndex(index);
+        uniform = checkUniform();
     }
 
     public void addPoint(FunctionPoint point) throws InappropriateFunctionPointException {
         if (count == 0) {
             FunctionNode newNode = addNodeToTail();
             newNode.val = new FunctionPoint(point);
+            uniform = false;
             return;
         }
 
@@ -295,8 +444,153 @@ public class LinkedListTabulatedFunction implements TabulatedFunction, Externali
 
         FunctionNode newNode = addNodeByIndex(index);
         newNode.val = new FunctionPoint(point);
+        uniform = checkUniform();
+    }
+
+    // пакетное добавление: точки списка и отсортированный пакет сливаются
+    // в массивы за один проход, после чего список перестраивается
+    public void addPoints(double[] newXs, double[] newYs, PointConflictPolicy policy)
+            throws InappropriateFunctionPointException {
+        double[] bx = new double[newXs.length];
+        double[] by = new double[newXs.length];
+        int k = TabulatedArrays.sortBatch(newXs, newYs, bx, by, policy);
+
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        int i = 0;
+        for (FunctionNode node = head.next; node != head; node = node.next, i++) {
+            xs[i] = node.val.getX();
+            ys[i] = node.val.getY();
+        }
+        double[] mergedXs = new double[count + k];
+        double[] mergedYs = new double[count + k];
+        int merged = TabulatedArrays.merge(xs, ys, count, bx, by, k, mergedXs, mergedYs, policy);
+
+        head = new FunctionNode();
+        count = 0;
+        resetCursor();
+        modCount++;
+        for (i = 0; i < merged; i++) {
+            addNodeToTail().val = new FunctionPoint(mergedXs[i], mergedYs[i]);
+        }
+        uniform = checkUniform();
+    }
+
+    // снимок за один проход по списку
+    @Override
+    public TabulatedFunction freeze() {
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        int i = 0;
+        for (FunctionNode node = head.next; node != head; node = node.next, i++) {
+            xs[i] = node.val.getX();
+            ys[i] = node.val.getY();
+        }
+        return new FrozenTabulatedFunction(xs, ys);
+    }
+
+    // двунаправленный итератор по копиям точек, начиная с первой
+    public ListIterator<FunctionPoint> pointIterator() {
+        return new PointIterator(head.next, 0);
+    }
+
+    // двунаправленный итератор по копиям точек, первый вызов next() вернёт точку index
+    public ListIterator<FunctionPoint> pointIterator(int index) {
+        if (index < 0 || index > count) {
+            throw new FunctionPointIndexOutOfBoundsException();
+        }
+        return new PointIterator(index == count ? head : getNodeByIndex(index), index);
+    }
+
+    // Итератор идёт по ссылкам узлов, поэтому полный обход линеен.
+    // Изменять список через итератор нельзя: точки изменяются только
+    // через методы функции с проверкой упорядоченности
+    private class PointIterator implements ListIterator<FunctionPoint> {
+        private FunctionNode next; // узел, который вернёт next() (head - конец)
+        private int nextIndex;
+        private final int expectedModCount = modCount;
+
+        PointIterator(FunctionNode next, int nextIndex) {
+            this.next = next;
+            this.nextIndex = nextIndex;
+        }
+
+        public boolean hasNext() {
+            return nextIndex < count;
+        }
+
+        public FunctionPoint next() {
+            checkForComodification();
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            FunctionPoint point = new FunctionPoint(next.val);
+            next = next.next;
+            nextIndex++;
+            return point;
+        }
+
+        public boolean hasPrevious() {
+            return nextIndex > 0;
+        }
+
+        public FunctionPoint previous() {
+            checkForComodification();
+            if (!hasPrevious()) {
+                throw new NoSuchElementException();
+            }
+            next = next.prev;
+            nextIndex--;
+            return new FunctionPoint(next.val);
+        }
+
+        public int nextIndex() {
+            return nextIndex;
+        }
+
+        public int previousIndex() {
+            return nextIndex - 1;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        public void set(FunctionPoint point) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void add(FunctionPoint point) {
+            throw new UnsupportedOperationException();
+        }
+
+        private void checkForComodification() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
     }
 
+    // ObjectOutputStream сериализует список через TabulatedFunctionProxy:
+    // два массива double вместо пары чисел на каждую точку, а при чтении
+    // точки читаются одним блоком, до построения узлов
+    private Object writeReplace() throws ObjectStreamException {
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        int i = 0;
+        for (FunctionNode node = head.next; node != head; node = node.next, i++) {
+            xs[i] = node.val.getX();
+            ys[i] = node.val.getY();
+        }
+        return new TabulatedFunctionProxy(TabulatedFunctionProxy.LINKED_LIST, xs, ys);
+    }
+
+    /*
+     * Externalizable остаётся ради потоков, записанных до перехода на
+     * TabulatedFunctionProxy: ObjectInputStream читает их через readExternal.
+     * ObjectOutputStream сам writeExternal не вызывает (его заменяет
+     * writeReplace); метод пишет тот же прежний формат для прямых вызовов.
+     */
     @Override
     public void writeExternal(ObjectOutput out) throws IOException {
         out.writeInt(count); // Записываем количество точек
@@ -310,17 +604,29 @@ public class LinkedListTabulatedFunction implements TabulatedFunction, Externali
     @Override
     public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
         int pointCount = in.readInt(); // Считываем количество точек
+        if (pointCount < 0) {
+            throw new InvalidObjectException("Invalid point count");
+        }
+
+        // Считываем точки и проверяем их так же, как прокси, до изменения списка
+        double[] xs = new double[pointCount];
+        double[] ys = new double[pointCount];
+        for (int i = 0; i < pointCount; i++) {
+            xs[i] = in.readDouble();
+            ys[i] = in.readDouble();
+        }
+        TabulatedFunctionProxy.checkPoints(xs, ys);
 
         // Восстанавливаем начальное состояние списка
         head = new FunctionNode();
         count = 0;
+        resetCursor();
+        modCount++;
 
-        // Считываем точки и добавляем их в список
         for (int i = 0; i < pointCount; i++) {
-            double x = in.readDouble();
-            double y = in.readDouble();
-            addNodeToTail().val = new FunctionPoint(x, y);
+            addNodeToTail().val = new FunctionPoint(xs[i], ys[i]);
         }
+        uniform = checkUniform();
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,280 @@
+package functions;
+
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Табулированная функция только для чтения, вычисляемая прямо из файла,
+ * отображённого в память (FileChannel.map). Точки не копируются в кучу,
+ * страницы файла подгружаются операционной системой по мере обращения.
+ *
+ * Формат файла (все числа little-endian):
+ *   int    MAGIC ("TABF")
+ *   int    версия формата (VERSION)
+ *   int    вид сетки: GRID_GENERAL или GRID_UNIFORM
+ *   int    количество точек n
+ *   double левая граница
+ *   double правая граница
+ *   для GRID_GENERAL: n абсцисс, затем n ординат;
+ *   для GRID_UNIFORM: только n ординат, абсциссы вычисляются как в
+ *   TabulatedFunctions.tabulate: leftX + i * step, последняя равна rightX
+ */
+public final class MappedTabulatedFunction implements TabulatedFunction {
+    private static final long serialVersionUID = 1L;
+
+    static final int MAGIC = 0x54414246; // "TABF"
+    static final int VERSION = 1;
+    static final int GRID_GENERAL = 0;
+    static final int GRID_UNIFORM = 1;
+    static final int HEADER_SIZE = 32;
+    static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private static final double EPSILON = 1e-9;
+
+    private final transient DoubleColumn xs; // null для равномерной сетки
+    private final transient DoubleColumn ys;
+    private final int count;
+    private final double leftX;
+    private final double rightX;
+    private final double step;
+
+    private MappedTabulatedFunction(DoubleColumn xs, DoubleColumn ys, int count, double leftX, double rightX) {
+        this.xs = xs;
+        this.ys = ys;
+        this.count = count;
+        this.leftX = leftX;
+        this.rightX = rightX;
+        this.step = (rightX - leftX) / (count - 1);
+    }
+
+    // отображает файл в память; канал после этого можно закрыть
+    static MappedTabulatedFunction open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ORDER);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("Unexpected end of file in header");
+                }
+            }
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a mapped tabulated function file");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported format version " + version);
+            }
+            int grid = header.getInt();
+            int count = header.getInt();
+            double left = header.getDouble();
+            double right = header.getDouble();
+            if (count < 2) {
+                throw new IOException("Point number must be bigger than 2");
+            }
+            if (grid != GRID_GENERAL && grid != GRID_UNIFORM) {
+                throw new IOException("Unknown grid kind " + grid);
+            }
+
+            int columns = (grid == GRID_GENERAL) ? 2 : 1;
+            long columnBytes = (long) count * Double.BYTES;
+            if (channel.size() < HEADER_SIZE + columns * columnBytes) {
+                throw new IOException("File is truncated");
+            }
+            DoubleColumn xs = null;
+            long offset = HEADER_SIZE;
+            if (grid == GRID_GENERAL) {
+                xs = new DoubleColumn(channel, offset, count);
+                offset += columnBytes;
+            }
+            DoubleColumn ys = new DoubleColumn(channel, offset, count);
+            return new MappedTabulatedFunction(xs, ys, count, left, right);
+        }
+    }
+
+    // записывает функцию в файл; равномерная сетка сохраняется без абсцисс
+    static void write(TabulatedFunction function, Path path) throws IOException {
+        int count = function.getPointsCount();
+        double left = function.getPointX(0);
+        double right = function.getPointX(count - 1);
+        boolean uniform = TabulatedArrays.isExactGrid(function);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ORDER);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(uniform ? GRID_UNIFORM : GRID_GENERAL).putInt(count);
+            buffer.putDouble(left).putDouble(right);
+            if (!uniform) {
+                for (int i = 0; i < count; i++) {
+                    if (!buffer.hasRemaining()) {
+                        drain(channel, buffer);
+                    }
+                    buffer.putDouble(function.getPointX(i));
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                if (!buffer.hasRemaining()) {
+                    drain(channel, buffer);
+                }
+                buffer.putDouble(function.getPointY(i));
+            }
+            drain(channel, buffer);
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // при сериализации сохраняется копия точек в памяти
+    private Object writeReplace() throws ObjectStreamException {
+        return freeze();
+    }
+
+    public boolean isUniformGrid() {
+        return xs == null;
+    }
+
+    public double getLeftDomainBorder() {
+        return leftX;
+    }
+
+    public double getRightDomainBorder() {
+        return rightX;
+    }
+
+    public int getPointsCount() {
+        return count;
+    }
+
+    private double x(int i) {
+        if (xs != null) {
+            return xs.get(i);
+        }
+        return (i == count - 1) ? rightX : leftX + i * step;
+    }
+
+    public double getFunctionValue(double x) {
+        if ((x > rightX && Math.abs(x - rightX) > EPSILON) ||
+                (x < leftX && Math.abs(x - leftX) > EPSILON))
+            return Double.NaN;
+
+        int i = findInterval(x);
+        double x0 = x(i);
+        double x1 = x(i + 1);
+        if (Math.abs(x - x0) < EPSILON)
+            return ys.get(i);
+        if (Math.abs(x - x1) < EPSILON)
+            return ys.get(i + 1);
+        return TabulatedArrays.interpolate(x, x0, ys.get(i), x1, ys.get(i + 1));
+    }
+
+    // индекс левого конца интервала, содержащего x (как TabulatedArrays.findInterval)
+    private int findInterval(double x) {
+        int last = count - 2;
+        int low;
+        int high;
+        if (xs == null) {
+            int i = (int) ((x - leftX) / step);
+            low = Math.max(0, Math.min(i, last));
+            // поправка на погрешность вычисления индекса
+            while (low > 0 && x(low) > x) {
+                low--;
+            }
+            while (low < last && x(low + 1) <= x) {
+                low++;
+            }
+            return low;
+        }
+        low = 0;
+        high = last;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (xs.get(mid) <= x) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    public FunctionPoint getPoint(int index) {
+        checkIndex(index);
+        return new FunctionPoint(x(index), ys.get(index));
+    }
+
+    public double getPointX(int index) {
+        checkIndex(index);
+        return x(index);
+    }
+
+    public double getPointY(int index) {
+        checkIndex(index);
+        return ys.get(index);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new FunctionPointIndexOutOfBoundsException();
+        }
+    }
+
+    public void setPoint(int index, FunctionPoint point) {
+        throw new UnsupportedOperationException("Mapped function is read-only");
+    }
+
+    public void setPointX(int index, double x) {
+        throw new UnsupportedOperationException("Mapped function is read-only");
+    }
+
+    public void setPointY(int index, double y) {
+        throw new UnsupportedOperationException("Mapped function is read-only");
+    }
+
+    public void deletePoint(int index) {
+        throw new UnsupportedOperationException("Mapped function is read-only");
+    }
+
+    public void addPoint(FunctionPoint point) {
+        throw new UnsupportedOperationException("Mapped function is read-only");
+    }
+
+    public void addPoints(double[] newXs, double[] newYs, PointConflictPolicy policy) {
+        throw new UnsupportedOperationException("Mapped function is read-only");
+    }
+
+    // Столбец чисел double в файле. Один MappedByteBuffer ограничен 2 ГБ,
+    // поэтому большой столбец отображается несколькими сегментами
+    private static final class DoubleColumn {
+        private static final int SEGMENT_SHIFT = 27; // 2^27 чисел = 1 ГБ на сегмент
+        private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+
+        private final DoubleBuffer[] segments;
+
+        DoubleColumn(FileChannel channel, long offset, int count) throws IOException {
+            int segmentCount = (int) (((long) count + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+            segments = new DoubleBuffer[segmentCount];
+            for (int s = 0; s < segmentCount; s++) {
+                long first = (long) s << SEGMENT_SHIFT;
+                long length = Math.min(count - first, 1L << SEGMENT_SHIFT);
+                segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, offset + first * Double.BYTES,
+                        length * Double.BYTES).order(ORDER).asDoubleBuffer();
+            }
+        }
+
+        double get(int index) {
+            return segments[index >>> SEGMENT_SHIFT].get(index & SEGMENT_MASK);
+        }
+    }
+
+}
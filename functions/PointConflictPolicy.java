@@ -0,0 +1,12 @@
+package functions;
+
+// что делать при пакетном добавлении точки, абсцисса которой совпадает
+// (с точностью до EPSILON) с абсциссой уже имеющейся или другой добавляемой точки
+public enum PointConflictPolicy {
+    // выбросить InappropriateFunctionPointException, не изменяя функцию
+    REJECT,
+    // оставить имеющуюся точку (из совпадающих добавляемых - первую)
+    KEEP_OLD,
+    // заменить ординату имеющейся точки (из совпадающих добавляемых берётся последняя)
+    OVERWRITE
+}
@@ -0,0 +1,25 @@
+package functions;
+
+import java.io.IOException;
+
+/*
+ * Последовательный курсор по точкам табулированной функции, читаемой из
+ * потока. Точки не накапливаются в памяти: после next() доступна только
+ * текущая точка. Поток, из которого читает курсор, закрывает вызывающий код.
+ */
+public interface PointCursor {
+
+    // количество точек, объявленное в заголовке данных
+    int getPointsCount();
+
+    // переходит к следующей точке; false, если точек больше нет
+    boolean next() throws IOException;
+
+    // номер текущей точки (-1 до первого вызова next)
+    int index();
+
+    double x();
+
+    double y();
+
+}
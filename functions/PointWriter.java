@@ -0,0 +1,16 @@
+package functions;
+
+import java.io.IOException;
+
+/*
+ * Последовательная запись точек в поток в одном из форматов TabulatedFunctions.
+ * Количество точек задаётся при создании, так как оба формата начинаются с него.
+ */
+public interface PointWriter {
+
+    void write(double x, double y) throws IOException;
+
+    // сбрасывает буферы в поток и проверяет, что записано объявленное число точек
+    void finish() throws IOException;
+
+}
@@ -0,0 +1,430 @@
+package functions;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Табулированная функция на индексируемом списке с пропусками (skip list).
+// Каждая ссылка уровня хранит свою "ширину" - число точек, которые она
+// перепрыгивает, поэтому и поиск по x, и доступ по номеру точки работают
+// за O(log n), а добавление и удаление точки не сдвигают остальные точки.
+// Подходит для таблиц, в которые постоянно добавляются и из которых удаляются точки
+public class SkipListTabulatedFunction implements TabulatedFunction, Externalizable {
+
+    private static final long serialVersionUID = 1L;
+    private static final double EPSILON = 1e-9;
+
+    // максимальное число уровней: при вероятности 1/4 хватает на 4^16 точек
+    private static final int MAX_LEVEL = 16;
+
+    private Node head; // фиктивная голова, есть на всех уровнях
+    private int level; // число используемых уровней
+    private int count; // количество точек
+
+    // Узел списка. next[i] - следующий узел на уровне i (null - конец списка),
+    // width[i] - на сколько позиций вперёд ведёт ссылка next[i];
+    // для next[i] == null это расстояние до позиции count + 1 за последней точкой
+    private static final class Node {
+        double x;
+        double y;
+        final Node[] next;
+        final int[] width;
+
+        Node(double x, double y, int level) {
+            this.x = x;
+            this.y = y;
+            this.next = new Node[level];
+            this.width = new int[level];
+        }
+    }
+
+    // --- ПУБЛИЧНЫЙ КОНСТРУКТОР БЕЗ АРГУМЕНТОВ ДЛЯ EXTERNALIZABLE ---
+    public SkipListTabulatedFunction() {
+        clear();
+    }
+
+    public SkipListTabulatedFunction(FunctionPoint[] array) {
+        if (array.length < 2) {
+            throw new IllegalArgumentException("Length must be more than 2");
+        }
+        double[] xs = new double[array.length];
+        double[] ys = new double[array.length];
+        for (int i = 0; i < array.length; i++) {
+            if (i > 0 && array[i].getX() <= array[i - 1].getX()) { // Проверка порядка
+                throw new IllegalArgumentException("Points must be sorted by X");
+            }
+            xs[i] = array[i].getX();
+            ys[i] = array[i].getY();
+        }
+        build(xs, ys, array.length);
+    }
+
+    public SkipListTabulatedFunction(double leftX, double rightX, int pointsCount) {
+        this(leftX, rightX, new double[checkPointsCount(pointsCount)]);
+    }
+
+    public SkipListTabulatedFunction(double leftX, double rightX, double[] values) {
+        if (leftX >= rightX || Math.abs(leftX - rightX) < EPSILON) {
+            throw new IllegalArgumentException("The left boundary is bigger than the right");
+        }
+        if (values.length < 2) {
+            throw new IllegalArgumentException("Point number must be bigger than 2");
+        }
+        double[] xs = new double[values.length];
+        double step = (rightX - leftX) / (values.length - 1);
+        for (int i = 0; i < values.length; i++) {
+            xs[i] = leftX + step * i;
+        }
+        build(xs, values, values.length);
+    }
+
+    private static int checkPointsCount(int pointsCount) {
+        if (pointsCount < 2) {
+            throw new IllegalArgumentException("Point number must be bigger than 2");
+        }
+        return pointsCount;
+    }
+
+    // делает список пустым
+    private void clear() {
+        head = new Node(Double.NaN, Double.NaN, MAX_LEVEL);
+        Arrays.fill(head.width, 1);
+        level = 1;
+        count = 0;
+    }
+
+    // строит список из упорядоченных по x точек за O(n), добавляя их в хвост
+    private void build(double[] xs, double[] ys, int n) {
+        clear();
+        Node[] last = new Node[MAX_LEVEL]; // последний узел на каждом уровне
+        int[] lastPos = new int[MAX_LEVEL]; // его позиция (голова - 0)
+        Arrays.fill(last, head);
+        for (int pos = 1; pos <= n; pos++) {
+            int nodeLevel = randomLevel();
+            Node node = new Node(xs[pos - 1], ys[pos - 1], nodeLevel);
+            for (int i = 0; i < nodeLevel; i++) {
+                last[i].next[i] = node;
+                last[i].width[i] = pos - lastPos[i];
+                last[i] = node;
+                lastPos[i] = pos;
+            }
+            level = Math.max(level, nodeLevel);
+        }
+        for (int i = 0; i < MAX_LEVEL; i++) {
+            last[i].width[i] = n + 1 - lastPos[i];
+        }
+        count = n;
+    }
+
+    // случайный уровень нового узла: уровень k+1 достаётся с вероятностью 1/4 от уровня k
+    private static int randomLevel() {
+        int bits = ThreadLocalRandom.current().nextInt() | (1 << (2 * (MAX_LEVEL - 1)));
+        return 1 + Integer.numberOfTrailingZeros(bits) / 2;
+    }
+
+    // возвращает узел с номером index за O(log n)
+    private Node getNode(int index) {
+        if (index < 0 || index >= count) {
+            throw new FunctionPointIndexOutOfBoundsException();
+        }
+        int target = index + 1;
+        Node node = head;
+        int pos = 0;
+        for (int i = level - 1; i >= 0; i--) {
+            while (node.next[i] != null && pos + node.width[i] <= target) {
+                pos += node.width[i];
+                node = node.next[i];
+            }
+        }
+        return node;
+    }
+
+    // последний узел с абсциссой, не большей x (голова, если таких нет)
+    private Node floorNode(double x) {
+        Node node = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (node.next[i] != null && node.next[i].x <= x) {
+                node = node.next[i];
+            }
+        }
+        return node;
+    }
+
+    private Node lastNode() {
+        Node node = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (node.next[i] != null) {
+                node = node.next[i];
+            }
+        }
+        return node;
+    }
+
+    public double getLeftDomainBorder() {
+        if (count == 0)
+            throw new IllegalStateException("List is empty");
+        return head.next[0].x;
+    }
+
+    public double getRightDomainBorder() {
+        if (count == 0)
+            throw new IllegalStateException("List is empty");
+        return lastNode().x;
+    }
+
+    public int getPointsCount() {
+        return count;
+    }
+
+    public double getFunctionValue(double x) {
+        if (count == 0)
+            return Double.NaN;
+        return valueAt(x, head.next[0].x, lastNode().x);
+    }
+
+    // пакетное вычисление: возрастающие точки запроса обрабатываются
+    // одним проходом по нижнему уровню списка, иначе каждая ищется за O(log n)
+    @Override
+    public void evaluate(double[] xs, int xsOffset, double[] out, int outOffset, int length) {
+        if (count == 0) {
+            Arrays.fill(out, outOffset, outOffset + length, Double.NaN);
+            return;
+        }
+        double left = head.next[0].x;
+        double right = lastNode().x;
+
+        if (!TabulatedArrays.isAscending(xs, xsOffset, length)) {
+            for (int i = 0; i < length; i++) {
+                out[outOffset + i] = valueAt(xs[xsOffset + i], left, right);
+            }
+            return;
+        }
+
+        Node current = head.next[0];
+        for (int i = 0; i < length; i++) {
+            double x = xs[xsOffset + i];
+            if (outside(x, left, right)) {
+                out[outOffset + i] = Double.NaN;
+                continue;
+            }
+            while (current.next[0].next[0] != null && current.next[0].x <= x) {
+                current = current.next[0];
+            }
+            out[outOffset + i] = valueInNode(current, x);
+        }
+    }
+
+    private static boolean outside(double x, double left, double right) {
+        return (x > right && Math.abs(x - right) > EPSILON) ||
+                (x < left && Math.abs(x - left) > EPSILON);
+    }
+
+    // значение функции в точке x при известных границах непустого списка
+    private double valueAt(double x, double left, double right) {
+        if (outside(x, left, right)) {
+            return Double.NaN;
+        }
+        Node node = floorNode(x);
+        if (node == head) {
+            node = head.next[0]; // x левее первой точки в пределах EPSILON
+        }
+        if (node.next[0] == null) {
+            return node.y; // x правее последней точки в пределах EPSILON
+        }
+        return valueInNode(node, x);
+    }
+
+    // значение в точке x, лежащей в интервале [node, node.next[0]]
+    private static double valueInNode(Node node, double x) {
+        Node next = node.next[0];
+        if (Math.abs(x - node.x) < EPSILON)
+            return node.y;
+        if (Math.abs(x - next.x) < EPSILON)
+            return next.y;
+        return TabulatedArrays.interpolate(x, node.x, node.y, next.x, next.y);
+    }
+
+    public FunctionPoint getPoint(int index) {
+        Node node = getNode(index);
+        return new FunctionPoint(node.x, node.y);
+    }
+
+    public void setPoint(int index, FunctionPoint point) throws InappropriateFunctionPointException {
+        Node node = getNode(index);
+        checkX(index, node, point.getX());
+        node.x = point.getX();
+        node.y = point.getY();
+    }
+
+    public double getPointX(int index) {
+        return getNode(index).x;
+    }
+
+    public double getPointY(int index) {
+        return getNode(index).y;
+    }
+
+    public void setPointX(int index, double x) throws InappropriateFunctionPointException {
+        Node node = getNode(index);
+        checkX(index, node, x);
+        node.x = x;
+    }
+
+    public void setPointY(int index, double y) {
+        getNode(index).y = y;
+    }
+
+    // новая абсцисса узла должна остаться строго между абсциссами соседей
+    private void checkX(int index, Node node, double x) throws InappropriateFunctionPointException {
+        double prevX = (index == 0) ? Double.NEGATIVE_INFINITY : getNode(index - 1).x;
+        double nextX = (node.next[0] == null) ? Double.POSITIVE_INFINITY : node.next[0].x;
+        if (x <= prevX + EPSILON || x >= nextX - EPSILON) {
+            throw new InappropriateFunctionPointException();
+        }
+    }
+
+    public void deletePoint(int index) {
+        if (count < 3) {
+            throw new IllegalStateException("Number of points is less than 3");
+        }
+        if (index < 0 || index >= count) {
+            throw new FunctionPointIndexOutOfBoundsException();
+        }
+
+        // update[i] - последний узел уровня i перед удаляемым
+        Node[] update = new Node[level];
+        int target = index + 1;
+        Node node = head;
+        int pos = 0;
+        for (int i = level - 1; i >= 0; i--) {
+            while (node.next[i] != null && pos + node.width[i] < target) {
+                pos += node.width[i];
+                node = node.next[i];
+            }
+            update[i] = node;
+        }
+
+        Node victim = update[0].next[0];
+        for (int i = 0; i < level; i++) {
+            if (update[i].next[i] == victim) {
+                update[i].width[i] += victim.width[i] - 1;
+                update[i].next[i] = victim.next[i];
+            } else {
+                update[i].width[i]--;
+            }
+        }
+        // ссылки головы выше используемых уровней указывают в конец списка
+        for (int i = level; i < MAX_LEVEL; i++) {
+            head.width[i]--;
+        }
+        while (level > 1 && head.next[level - 1] == null) {
+            level--;
+        }
+        count--;
+    }
+
+    public void addPoint(FunctionPoint point) throws InappropriateFunctionPointException {
+        double x = point.getX();
+
+        // update[i] - последний узел уровня i с абсциссой меньше x, rank[i] - его позиция
+        Node[] update = new Node[MAX_LEVEL];
+        int[] rank = new int[MAX_LEVEL];
+        Node node = head;
+        int pos = 0;
+        for (int i = level - 1; i >= 0; i--) {
+            while (node.next[i] != null && node.next[i].x < x) {
+                pos += node.width[i];
+                node = node.next[i];
+            }
+            update[i] = node;
+            rank[i] = pos;
+        }
+
+        Node next = node.next[0];
+        if ((node != head && Math.abs(node.x - x) < EPSILON)
+                || (next != null && Math.abs(next.x - x) < EPSILON)) {
+            throw new InappropriateFunctionPointException("Point with this X already exists");
+        }
+
+        int nodeLevel = randomLevel();
+        for (int i = level; i < nodeLevel; i++) {
+            update[i] = head;
+            rank[i] = 0;
+        }
+
+        Node newNode = new Node(x, point.getY(), nodeLevel);
+        for (int i = 0; i < nodeLevel; i++) {
+            newNode.next[i] = update[i].next[i];
+            update[i].next[i] = newNode;
+            newNode.width[i] = update[i].width[i] - (rank[0] - rank[i]);
+            update[i].width[i] = rank[0] - rank[i] + 1;
+        }
+        // ссылки, перепрыгивающие новый узел, стали на одну позицию длиннее
+        for (int i = nodeLevel; i < level; i++) {
+            update[i].width[i]++;
+        }
+        for (int i = Math.max(level, nodeLevel); i < MAX_LEVEL; i++) {
+            head.width[i]++;
+        }
+        level = Math.max(level, nodeLevel);
+        count++;
+    }
+
+    // пакетное добавление: слияние с отсортированным пакетом и перестроение за O(n + k log k)
+    public void addPoints(double[] newXs, double[] newYs, PointConflictPolicy policy)
+            throws InappropriateFunctionPointException {
+        double[] bx = new double[newXs.length];
+        double[] by = new double[newXs.length];
+        int k = TabulatedArrays.sortBatch(newXs, newYs, bx, by, policy);
+
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        int i = 0;
+        for (Node node = head.next[0]; node != null; node = node.next[0], i++) {
+            xs[i] = node.x;
+            ys[i] = node.y;
+        }
+        double[] mergedXs = new double[count + k];
+        double[] mergedYs = new double[count + k];
+        int merged = TabulatedArrays.merge(xs, ys, count, bx, by, k, mergedXs, mergedYs, policy);
+        build(mergedXs, mergedYs, merged);
+    }
+
+    // снимок за один проход по нижнему уровню
+    @Override
+    public TabulatedFunction freeze() {
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        int i = 0;
+        for (Node node = head.next[0]; node != null; node = node.next[0], i++) {
+            xs[i] = node.x;
+            ys[i] = node.y;
+        }
+        return new FrozenTabulatedFunction(xs, ys);
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeInt(count); // Записываем количество точек
+        for (Node node = head.next[0]; node != null; node = node.next[0]) {
+            out.writeDouble(node.x);
+            out.writeDouble(node.y);
+        }
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        int pointCount = in.readInt(); // Считываем количество точек
+        double[] xs = new double[pointCount];
+        double[] ys = new double[pointCount];
+        for (int i = 0; i < pointCount; i++) {
+            xs[i] = in.readDouble();
+            ys[i] = in.readDouble();
+        }
+        build(xs, ys, pointCount);
+    }
+
+}
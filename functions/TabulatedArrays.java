@@ -0,0 +1,257 @@
+package functions;
+
+// Вспомогательные операции над отсортированными по x массивами точек:
+// поиск интервала, интерполяция и проверка равномерности сетки.
+// Используются реализациями TabulatedFunction, хранящими точки в double[]
+final class TabulatedArrays {
+    static final double EPSILON = 1e-9;
+
+    // допустимое отклонение узла от равномерной сетки (в долях шага)
+    private static final double GRID_TOLERANCE = 1e-6;
+
+    private TabulatedArrays() {
+        // Запрещаем создание экземпляров
+    }
+
+    // лежит ли x в i-м узле равномерной сетки с началом left и шагом step
+    static boolean isGridPoint(double x, double left, double step, int i) {
+        return Math.abs(x - (left + step * i)) <= step * GRID_TOLERANCE;
+    }
+
+    // проверяет, что первые count абсцисс образуют равномерную сетку
+    static boolean isUniform(double[] xs, int count) {
+        if (count < 2) {
+            return false;
+        }
+        double left = xs[0];
+        double step = (xs[count - 1] - left) / (count - 1);
+        for (int i = 1; i < count - 1; i++) {
+            if (!isGridPoint(xs[i], left, step, i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // совпадают ли абсциссы функции бит в бит с сеткой leftX + i * step
+    // (последняя точка - rightX), которую строит TabulatedFunctions.tabulate.
+    // Такую сетку форматы хранения сохраняют только границами
+    static boolean isExactGrid(TabulatedFunction function) {
+        int count = function.getPointsCount();
+        double left = function.getPointX(0);
+        double right = function.getPointX(count - 1);
+        double step = (right - left) / (count - 1);
+        for (int i = 1; i < count - 1; i++) {
+            if (function.getPointX(i) != left + i * step) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // возвращает индекс i левого конца интервала [xs[i], xs[i + 1]], содержащего x;
+    // для x вне таблицы возвращается ближайший крайний интервал.
+    // Для равномерной сетки индекс вычисляется за O(1), иначе - бинарным поиском
+    static int findInterval(double[] xs, int count, double x, boolean uniform) {
+        int last = count - 2;
+        if (uniform) {
+            double step = (xs[count - 1] - xs[0]) / (count - 1);
+            int i = (int) ((x - xs[0]) / step);
+            if (i < 0) {
+                i = 0;
+            } else if (i > last) {
+                i = last;
+            }
+            // поправка на погрешность вычисления индекса
+            while (i > 0 && xs[i] > x) {
+                i--;
+            }
+            while (i < last && xs[i + 1] <= x) {
+                i++;
+            }
+            return i;
+        }
+
+        return search(xs, 0, last, x);
+    }
+
+    // бинарный поиск наибольшего индекса из [low, high], для которого xs[i] <= x
+    // (либо low, если таких нет)
+    private static int search(double[] xs, int low, int high, double x) {
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (xs[mid] <= x) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    // значение табулированной функции в точке x (NaN вне области определения)
+    static double valueAt(double[] xs, double[] ys, int count, double x, boolean uniform) {
+        double left = xs[0];
+        double right = xs[count - 1];
+        if ((x > right && Math.abs(x - right) > EPSILON) ||
+                (x < left && Math.abs(x - left) > EPSILON))
+            return Double.NaN;
+
+        return valueInInterval(xs, ys, findInterval(xs, count, x, uniform), x);
+    }
+
+    // пакетное вычисление: out[outOffset + i] = f(in[inOffset + i]).
+    // Если точки запроса упорядочены по возрастанию, таблица проходится
+    // одним курсором за O(n + m), иначе каждая точка ищется отдельно
+    static void evaluate(double[] xs, double[] ys, int count, boolean uniform,
+            double[] in, int inOffset, double[] out, int outOffset, int length) {
+        if (uniform || !isAscending(in, inOffset, length)) {
+            // на равномерной сетке поиск и так O(1)
+            for (int i = 0; i < length; i++) {
+                out[outOffset + i] = valueAt(xs, ys, count, in[inOffset + i], uniform);
+            }
+            return;
+        }
+
+        double left = xs[0];
+        double right = xs[count - 1];
+        int cursor = 0;
+        for (int i = 0; i < length; i++) {
+            double x = in[inOffset + i];
+            if ((x > right && Math.abs(x - right) > EPSILON) ||
+                    (x < left && Math.abs(x - left) > EPSILON)) {
+                out[outOffset + i] = Double.NaN;
+                continue;
+            }
+            cursor = advance(xs, count, cursor, x);
+            out[outOffset + i] = valueInInterval(xs, ys, cursor, x);
+        }
+    }
+
+    // упорядочены ли значения участка массива по неубыванию (NaN нарушает порядок)
+    static boolean isAscending(double[] values, int offset, int length) {
+        for (int i = offset + 1; i < offset + length; i++) {
+            if (!(values[i] >= values[i - 1])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // сдвигает курсор интервала вправо до интервала, содержащего x (x не левее xs[cursor]).
+    // Используется экспоненциальный поиск, поэтому редкие далёкие запросы
+    // не заставляют проходить таблицу по одному элементу
+    static int advance(double[] xs, int count, int cursor, double x) {
+        int last = count - 2;
+        if (cursor >= last || xs[cursor + 1] > x) {
+            return cursor;
+        }
+        int low = cursor + 1; // xs[low] <= x
+        int step = 1;
+        while (low + step <= last && xs[low + step] <= x) {
+            low += step;
+            step <<= 1;
+        }
+        return search(xs, low, Math.min(low + step - 1, last), x);
+    }
+
+    // значение в точке x, если известно, что x лежит в интервале с индексом i
+    static double valueInInterval(double[] xs, double[] ys, int i, double x) {
+        if (Math.abs(x - xs[i]) < EPSILON)
+            return ys[i];
+        if (Math.abs(x - xs[i + 1]) < EPSILON)
+            return ys[i + 1];
+        return interpolate(x, xs[i], ys[i], xs[i + 1], ys[i + 1]);
+    }
+
+    // линейная интерполяция между двумя точками
+    static double interpolate(double x, double x0, double y0, double x1, double y1) {
+        double k = (y1 - y0) / (x1 - x0);
+        double b = y0 - k * x0;
+        return k * x + b;
+    }
+
+    // Подготовка пакета для addPoints: копирует точки в bx/by, упорядочивая
+    // их по x (устойчиво, чтобы "первая" и "последняя" точки сохраняли смысл),
+    // и схлопывает совпадающие абсциссы согласно policy. Возвращает число точек
+    static int sortBatch(double[] xs, double[] ys, double[] bx, double[] by, PointConflictPolicy policy)
+            throws InappropriateFunctionPointException {
+        if (xs.length != ys.length) {
+            throw new IllegalArgumentException("Arrays of x and y must have the same length");
+        }
+        int k = xs.length;
+        for (int i = 0; i < k; i++) {
+            if (Double.isNaN(xs[i])) {
+                throw new IllegalArgumentException("X must not be NaN");
+            }
+        }
+
+        if (isAscending(xs, 0, k)) {
+            System.arraycopy(xs, 0, bx, 0, k);
+            System.arraycopy(ys, 0, by, 0, k);
+        } else {
+            Integer[] order = new Integer[k];
+            for (int i = 0; i < k; i++) {
+                order[i] = i;
+            }
+            java.util.Arrays.sort(order, (a, b) -> Double.compare(xs[a], xs[b]));
+            for (int i = 0; i < k; i++) {
+                bx[i] = xs[order[i]];
+                by[i] = ys[order[i]];
+            }
+        }
+
+        int m = 0;
+        for (int i = 0; i < k; i++) {
+            if (m > 0 && Math.abs(bx[i] - bx[m - 1]) < EPSILON) {
+                if (policy == PointConflictPolicy.REJECT) {
+                    throw new InappropriateFunctionPointException("Points with equal X in the batch");
+                }
+                if (policy == PointConflictPolicy.OVERWRITE) {
+                    by[m - 1] = by[i];
+                }
+                continue;
+            }
+            bx[m] = bx[i];
+            by[m] = by[i];
+            m++;
+        }
+        return m;
+    }
+
+    // Сливает n имеющихся точек (xs, ys) с k подготовленными точками (bx, by)
+    // в массивы outX/outY длиной не меньше n + k. Возвращает число точек результата
+    static int merge(double[] xs, double[] ys, int n, double[] bx, double[] by, int k,
+            double[] outX, double[] outY, PointConflictPolicy policy) throws InappropriateFunctionPointException {
+        int i = 0;
+        int j = 0;
+        int m = 0;
+        while (i < n && j < k) {
+            if (Math.abs(xs[i] - bx[j]) < EPSILON) {
+                if (policy == PointConflictPolicy.REJECT) {
+                    throw new InappropriateFunctionPointException("Point with this X already exists");
+                }
+                outX[m] = xs[i];
+                outY[m++] = (policy == PointConflictPolicy.OVERWRITE) ? by[j] : ys[i];
+                i++;
+                j++;
+            } else if (xs[i] < bx[j]) {
+                outX[m] = xs[i];
+                outY[m++] = ys[i++];
+            } else {
+                outX[m] = bx[j];
+                outY[m++] = by[j++];
+            }
+        }
+        while (i < n) {
+            outX[m] = xs[i];
+            outY[m++] = ys[i++];
+        }
+        while (j < k) {
+            outX[m] = bx[j];
+            outY[m++] = by[j++];
+        }
+        return m;
+    }
+
+}
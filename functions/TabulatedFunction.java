@@ -36,4 +36,39 @@ public interface TabulatedFunction extends Function, Serializable {
 
     void addPoint(FunctionPoint point) throws InappropriateFunctionPointException;
 
-}
\ No newline at end of file
+    /*
+     * Пакетное добавление точек: пакет сортируется один раз и сливается с
+     * имеющимися точками за один проход, O(n + k log k) вместо O(k * n) для k
+     * вызовов addPoint. Совпадения абсцисс разрешаются согласно policy; при
+     * REJECT функция остаётся неизменной, если хотя бы одна точка отвергнута.
+     */
+    void addPoints(double[] xs, double[] ys, PointConflictPolicy policy) throws InappropriateFunctionPointException;
+
+    default void addPoints(FunctionPoint[] points, PointConflictPolicy policy)
+            throws InappropriateFunctionPointException {
+        double[] xs = new double[points.length];
+        double[] ys = new double[points.length];
+        for (int i = 0; i < points.length; i++) {
+            xs[i] = points[i].getX();
+            ys[i] = points[i].getY();
+        }
+        addPoints(xs, ys, policy);
+    }
+
+    /*
+     * Неизменяемый снимок текущего состояния функции, который можно без
+     * блокировок читать из любого числа потоков (см. FrozenTabulatedFunction).
+     * Последующие изменения исходной функции на снимок не влияют.
+     */
+    default TabulatedFunction freeze() {
+        int count = getPointsCount();
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = getPointX(i);
+            ys[i] = getPointY(i);
+        }
+        return new FrozenTabulatedFunction(xs, ys);
+    }
+
+}
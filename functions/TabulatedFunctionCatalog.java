@@ -0,0 +1,434 @@
+package functions;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ * Каталог табулированных функций на диске. Функции дописываются в один файл
+ * данных в двоичном формате outputTabulatedFunction, а небольшой файл индекса
+ * хранит для каждого имени смещение в файле данных, число точек и границы
+ * области определения. Функция читается с диска при первом обращении и
+ * остаётся в LRU-кэше, размер которого ограничен в байтах; давно не
+ * использованные функции вытесняются. Из кэша выдаются неизменяемые снимки
+ * (FrozenTabulatedFunction), поэтому одну функцию могут читать любые потоки.
+ *
+ * Повторная запись под тем же именем добавляет новую версию в конец файла
+ * данных, старая остаётся в нём неиспользуемой. Когда неиспользуемых байтов
+ * становится больше, чем используемых (и не меньше COMPACT_MIN_BYTES), put
+ * уплотняет каталог (compact): оба файла переписываются только с актуальными
+ * версиями, так что файл данных не больше чем вдвое превышает их объём.
+ */
+public class TabulatedFunctionCatalog implements Closeable {
+    static final String DATA_FILE = "functions.data";
+    static final String INDEX_FILE = "functions.index";
+    // суффикс файлов, в которые compact пишет новые версии данных и индекса
+    static final String COMPACT_SUFFIX = ".compact";
+
+    // приблизительный размер объекта функции в куче сверх массивов точек
+    private static final long OBJECT_OVERHEAD = 96;
+    // мусор меньше этого размера не стоит переписывания файлов
+    private static final long COMPACT_MIN_BYTES = 1 << 20;
+
+    private final Path dataPath;
+    private final Path indexPath;
+    private final long maxCachedBytes;
+
+    // файл данных заменяется при уплотнении; чтение функции с диска идёт
+    // вне блокировки каталога, поэтому канал защищён ещё и этой блокировкой:
+    // загрузки держат блокировку чтения, а compact ждёт их на блокировке записи
+    private final ReentrantReadWriteLock files = new ReentrantReadWriteLock();
+    private FileChannel data;
+    private long liveBytes; // байты актуальных версий функций в файле данных
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final LinkedHashMap<String, TabulatedFunction> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    // Запись индекса: где лежит функция и её основные характеристики
+    public static final class Entry {
+        private final String name;
+        private final long offset;
+        private final int pointsCount;
+        private final double leftX;
+        private final double rightX;
+
+        Entry(String name, long offset, int pointsCount, double leftX, double rightX) {
+            this.name = name;
+            this.offset = offset;
+            this.pointsCount = pointsCount;
+            this.leftX = leftX;
+            this.rightX = rightX;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getPointsCount() {
+            return pointsCount;
+        }
+
+        public double getLeftDomainBorder() {
+            return leftX;
+        }
+
+        public double getRightDomainBorder() {
+            return rightX;
+        }
+    }
+
+    private TabulatedFunctionCatalog(Path directory, long maxCachedBytes) throws IOException {
+        if (maxCachedBytes < 0) {
+            throw new IllegalArgumentException("Cache size must not be negative");
+        }
+        Files.createDirectories(directory);
+        this.dataPath = directory.resolve(DATA_FILE);
+        this.indexPath = directory.resolve(INDEX_FILE);
+        this.maxCachedBytes = maxCachedBytes;
+        recoverCompaction();
+        readIndex();
+        this.data = FileChannel.open(dataPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    // открывает каталог в директории (создаёт пустой, если его нет)
+    public static TabulatedFunctionCatalog open(Path directory, long maxCachedBytes) throws IOException {
+        return new TabulatedFunctionCatalog(directory, maxCachedBytes);
+    }
+
+    // индекс - последовательность записей (UTF имя, long смещение, int точек,
+    // double левая и правая граница); незавершённая последняя запись
+    // (например, после сбоя при записи) отбрасывается, и файл обрезается,
+    // чтобы следующие записи дописывались после последней целой
+    private void readIndex() throws IOException {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(indexPath);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        ByteArrayInputStream buffer = new ByteArrayInputStream(bytes);
+        DataInputStream in = new DataInputStream(buffer);
+        int valid = 0;
+        while (buffer.available() > 0) {
+            Entry entry;
+            try {
+                entry = new Entry(in.readUTF(), in.readLong(), in.readInt(), in.readDouble(), in.readDouble());
+            } catch (EOFException e) {
+                break;
+            }
+            entries.put(entry.name, entry);
+            valid = bytes.length - buffer.available();
+        }
+        if (valid < bytes.length) {
+            try (FileChannel index = FileChannel.open(indexPath, StandardOpenOption.WRITE)) {
+                index.truncate(valid);
+            }
+        }
+        for (Entry entry : entries.values()) {
+            liveBytes += size(entry.pointsCount);
+        }
+    }
+
+    /*
+     * Завершает или отменяет уплотнение, прерванное сбоем. compact сначала
+     * полностью записывает новые файлы данных и индекса, затем переименовывает
+     * файл данных и только потом индекс. Если новый файл данных уже на месте,
+     * остаётся переименовать индекс; иначе старые файлы целы, а недописанные
+     * новые удаляются.
+     */
+    private void recoverCompaction() throws IOException {
+        Path dataTemp = compactPath(dataPath);
+        Path indexTemp = compactPath(indexPath);
+        if (Files.exists(indexTemp) && !Files.exists(dataTemp)) {
+            Files.move(indexTemp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } else {
+            Files.deleteIfExists(dataTemp);
+            Files.deleteIfExists(indexTemp);
+        }
+    }
+
+    private static Path compactPath(Path path) {
+        return path.resolveSibling(path.getFileName() + COMPACT_SUFFIX);
+    }
+
+    // размер функции в файле данных (формат outputTabulatedFunction)
+    private static long size(int pointsCount) {
+        return Integer.BYTES + 2L * Double.BYTES * pointsCount;
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        out.writeUTF(entry.name);
+        out.writeLong(entry.offset);
+        out.writeInt(entry.pointsCount);
+        out.writeDouble(entry.leftX);
+        out.writeDouble(entry.rightX);
+    }
+
+    // добавляет или заменяет функцию под заданным именем
+    public synchronized void put(String name, TabulatedFunction function) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4 + 16 * function.getPointsCount());
+        TabulatedFunctions.outputTabulatedFunction(function, bytes);
+
+        long offset = data.size();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        while (buffer.hasRemaining()) {
+            data.write(buffer, offset + buffer.position());
+        }
+        data.force(false);
+
+        Entry entry = new Entry(name, offset, function.getPointsCount(),
+                function.getLeftDomainBorder(), function.getRightDomainBorder());
+        try (OutputStream file = Files.newOutputStream(indexPath, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            writeEntry(out, entry);
+        }
+
+        Entry previous = entries.put(name, entry);
+        if (previous != null) {
+            liveBytes -= size(previous.pointsCount);
+        }
+        liveBytes += size(entry.pointsCount);
+        TabulatedFunction stale = cache.remove(name);
+        if (stale != null) {
+            cachedBytes -= weight(stale.getPointsCount());
+        }
+
+        long garbage = data.size() - liveBytes;
+        if (garbage >= COMPACT_MIN_BYTES && garbage > liveBytes) {
+            compact();
+        }
+    }
+
+    /*
+     * Переписывает файлы данных и индекса, оставляя только актуальные версии
+     * функций. Кэш не меняется: содержимое функций остаётся тем же. Загрузки,
+     * уже читающие старый файл, compact дожидается.
+     */
+    public synchronized void compact() throws IOException {
+        Path dataTemp = compactPath(dataPath);
+        Path indexTemp = compactPath(indexPath);
+        Map<String, Entry> compacted = new LinkedHashMap<>();
+        try (FileChannel out = FileChannel.open(dataTemp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long position = 0;
+            for (Entry entry : entries.values()) {
+                long length = size(entry.pointsCount);
+                for (long done = 0; done < length; ) {
+                    long n = data.transferTo(entry.offset + done, length - done, out);
+                    if (n <= 0) {
+                        throw new EOFException("Data of function " + entry.name + " is truncated");
+                    }
+                    done += n;
+                }
+                compacted.put(entry.name,
+                        new Entry(entry.name, position, entry.pointsCount, entry.leftX, entry.rightX));
+                position += length;
+            }
+            out.force(false);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (Entry entry : compacted.values()) {
+                writeEntry(out, entry);
+            }
+        }
+        try (FileChannel out = FileChannel.open(indexTemp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(false);
+        }
+
+        // порядок переименований тот, что ожидает recoverCompaction
+        files.writeLock().lock();
+        try {
+            data.close();
+            try {
+                Files.move(dataTemp, dataPath, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                entries.clear();
+                entries.putAll(compacted);
+                Files.move(indexTemp, indexPath, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                data = FileChannel.open(dataPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+            }
+        } finally {
+            files.writeLock().unlock();
+        }
+    }
+
+    public synchronized boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+
+    public synchronized Set<String> names() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(entries.keySet()));
+    }
+
+    // запись индекса без загрузки функции (null, если имени нет)
+    public synchronized Entry getEntry(String name) {
+        return entries.get(name);
+    }
+
+    /*
+     * Функция по имени (null, если её нет в каталоге). При промахе кэша
+     * функция читается с диска вне блокировки каталога, так что загрузки
+     * разных функций идут параллельно.
+     */
+    public TabulatedFunction get(String name) throws IOException {
+        Entry entry;
+        FileChannel channel;
+        synchronized (this) {
+            TabulatedFunction cached = cache.get(name);
+            if (cached != null) {
+                hitCount++;
+                return cached;
+            }
+            entry = entries.get(name);
+            if (entry == null) {
+                return null; // отсутствующее имя - не промах кэша
+            }
+            missCount++;
+            // пока каталог заблокирован, compact не держит блокировку записи,
+            // так что здесь блокировка чтения берётся без ожидания
+            files.readLock().lock();
+            channel = data;
+        }
+
+        // прочитанные массивы сразу становятся снимком, без второй копии в freeze()
+        TabulatedFunction function;
+        try {
+            function = TabulatedFunctions.inputFrozenTabulatedFunction(
+                    new PositionalChannel(channel, entry.offset), ByteOrder.BIG_ENDIAN);
+        } finally {
+            files.readLock().unlock();
+        }
+
+        synchronized (this) {
+            if (entries.get(name) != entry) {
+                return function; // функцию заменили во время чтения - не кэшируем старую версию
+            }
+            TabulatedFunction existing = cache.get(name);
+            if (existing != null) {
+                return existing; // её уже загрузил другой поток
+            }
+            long weight = weight(entry.pointsCount);
+            if (weight <= maxCachedBytes) {
+                cache.put(name, function);
+                cachedBytes += weight;
+                evict();
+            }
+        }
+        return function;
+    }
+
+    // вытесняет давно не использованные функции, пока кэш не уложится в лимит
+    private void evict() {
+        Iterator<Map.Entry<String, TabulatedFunction>> iterator = cache.entrySet().iterator();
+        while (cachedBytes > maxCachedBytes && iterator.hasNext()) {
+            TabulatedFunction function = iterator.next().getValue();
+            iterator.remove();
+            cachedBytes -= weight(function.getPointsCount());
+            evictionCount++;
+        }
+    }
+
+    // размер функции в кэше: два массива double и сам объект
+    private static long weight(int pointsCount) {
+        return 2L * Double.BYTES * pointsCount + OBJECT_OVERHEAD;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    public synchronized int getCachedCount() {
+        return cache.size();
+    }
+
+    public long getMaxCachedBytes() {
+        return maxCachedBytes;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        data.close();
+    }
+
+    // Чтение файла с заданного смещения без изменения общей позиции канала,
+    // поэтому разные потоки могут читать один канал одновременно
+    private static final class PositionalChannel implements ReadableByteChannel {
+        private final FileChannel channel;
+        private long position;
+
+        PositionalChannel(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            int n = channel.read(dst, position);
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() {
+            // общий канал закрывает каталог
+        }
+    }
+
+}
@@ -0,0 +1,167 @@
+package functions;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Загрузка табулированных функций из файлов с автоматическим определением
+ * формата: двоичный (outputTabulatedFunction), текстовый
+ * (writeTabulatedFunction), отображаемый в память (MappedTabulatedFunction)
+ * или сжатый (CompressedTabulatedFunction). Много файлов читаются
+ * параллельно, так что время загрузки определяется пропускной способностью
+ * ввода-вывода, а не суммой задержек отдельных файлов.
+ */
+public class TabulatedFunctionLoader {
+
+    private TabulatedFunctionLoader() {
+        // Запрещаем создание экземпляров
+    }
+
+    // Результат загрузки: функции и ошибки по именам файлов без расширения
+    public static final class Result {
+        private final Map<String, TabulatedFunction> functions;
+        private final Map<Path, Exception> errors;
+
+        Result(Map<String, TabulatedFunction> functions, Map<Path, Exception> errors) {
+            this.functions = Collections.unmodifiableMap(functions);
+            this.errors = Collections.unmodifiableMap(errors);
+        }
+
+        public Map<String, TabulatedFunction> getFunctions() {
+            return functions;
+        }
+
+        public Map<Path, Exception> getErrors() {
+            return errors;
+        }
+    }
+
+    // загружает одну функцию, определяя формат по содержимому файла
+    public static TabulatedFunction load(Path path) throws IOException {
+        byte[] head = new byte[Integer.BYTES];
+        long size;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            size = channel.size();
+            ByteBuffer buffer = ByteBuffer.wrap(head);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    break; // короткий файл разберёт текстовый формат (с ошибкой)
+                }
+            }
+        }
+        int first = ByteBuffer.wrap(head).getInt();
+
+        if (size >= MappedTabulatedFunction.HEADER_SIZE
+                && ByteBuffer.wrap(head).order(MappedTabulatedFunction.ORDER).getInt() == MappedTabulatedFunction.MAGIC) {
+            return MappedTabulatedFunction.open(path);
+        }
+        if (first == CompressedTabulatedFunction.MAGIC) {
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+                return CompressedTabulatedFunction.read(in);
+            }
+        }
+        // двоичный формат: int количество точек и ровно столько пар чисел
+        if (first >= 0 && size == Integer.BYTES + 2L * Double.BYTES * first) {
+            try (InputStream in = Files.newInputStream(path)) {
+                return TabulatedFunctions.inputTabulatedFunction(in);
+            }
+        }
+        try (Reader in = Files.newBufferedReader(path, StandardCharsets.US_ASCII)) {
+            return TabulatedFunctions.readTabulatedFunction(in);
+        }
+    }
+
+    // загружает все обычные файлы каталога
+    public static Result loadDirectory(Path directory) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, Files::isRegularFile)) {
+            for (Path path : files) {
+                paths.add(path);
+            }
+        }
+        return loadAll(paths);
+    }
+
+    /*
+     * Загружает файлы параллельно в собственном пуле потоков, размер которого
+     * рассчитан на ожидание ввода-вывода, а не на число ядер.
+     */
+    public static Result loadAll(Collection<Path> paths) {
+        int threads = Math.max(1, Math.min(paths.size(), Runtime.getRuntime().availableProcessors() * 8));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            return loadAll(paths, executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /*
+     * Загружает файлы в заданном пуле потоков. На Java 21 и новее сюда можно
+     * передать Executors.newVirtualThreadPerTaskExecutor(), чтобы каждый файл
+     * читался в своём виртуальном потоке. Ошибка одного файла не прерывает
+     * загрузку остальных и попадает в Result.getErrors().
+     */
+    public static Result loadAll(Collection<Path> paths, ExecutorService executor) {
+        Map<Path, Future<TabulatedFunction>> futures = new LinkedHashMap<>();
+        for (Path path : paths) {
+            futures.put(path, executor.submit(() -> load(path)));
+        }
+
+        Map<String, TabulatedFunction> functions = new LinkedHashMap<>();
+        Map<Path, Exception> errors = new LinkedHashMap<>();
+        boolean interrupted = false;
+        for (Map.Entry<Path, Future<TabulatedFunction>> entry : futures.entrySet()) {
+            Path path = entry.getKey();
+            try {
+                TabulatedFunction function;
+                while (true) {
+                    try {
+                        function = entry.getValue().get();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                String name = nameOf(path);
+                if (functions.putIfAbsent(name, function) != null) {
+                    errors.put(path, new IOException("Duplicate function name " + name));
+                }
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                errors.put(path, cause instanceof Exception ? (Exception) cause : e);
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return new Result(functions, errors);
+    }
+
+    // имя функции - имя файла без расширения
+    static String nameOf(Path path) {
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+}
@@ -0,0 +1,76 @@
+package functions;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+
+// Сериализованная форма табулированных функций (шаблон serialization proxy).
+// Вместо внутреннего устройства объекта записываются два массива double
+// ровно по числу точек: ObjectOutputStream пишет их одним блоком без
+// метаданных на каждую точку. При чтении readResolve восстанавливает
+// объект исходного класса из этих массивов. Сами классы читают напрямую
+// только свой прежний формат (ArrayTabulatedFunction, LinkedList...) и
+// проверяют его через checkPoints, так что объект без проверок не получить
+final class TabulatedFunctionProxy implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    static final int ARRAY = 0;
+    static final int LINKED_LIST = 1;
+    static final int UNIFORM = 2; // xs содержит только левую и правую границы
+    static final int FROZEN = 3;
+    static final int UNIFORM_GENERAL = 4; // равномерная функция после перехода на общие массивы
+
+    private final int kind;
+    private final double[] xs;
+    private final double[] ys;
+
+    TabulatedFunctionProxy(int kind, double[] xs, double[] ys) {
+        this.kind = kind;
+        this.xs = xs;
+        this.ys = ys;
+    }
+
+    private Object readResolve() throws ObjectStreamException {
+        if (kind == UNIFORM) {
+            if (xs == null || ys == null || xs.length != 2 || ys.length < 2) {
+                throw new InvalidObjectException("Uniform grid needs two borders and at least two values");
+            }
+            try {
+                return new UniformTabulatedFunction(ys, xs[0], xs[1]);
+            } catch (IllegalArgumentException e) {
+                throw new InvalidObjectException(e.getMessage());
+            }
+        }
+        checkPoints(xs, ys);
+        // массивы прочитаны из потока и никому больше не принадлежат
+        switch (kind) {
+            case ARRAY:
+                return new ArrayTabulatedFunction(xs, ys);
+            case LINKED_LIST:
+                return new LinkedListTabulatedFunction(xs, ys);
+            case FROZEN:
+                return new FrozenTabulatedFunction(xs, ys);
+            case UNIFORM_GENERAL:
+                return new UniformTabulatedFunction(new ArrayTabulatedFunction(xs, ys));
+            default:
+                throw new InvalidObjectException("Unknown function kind " + kind);
+        }
+    }
+
+    // те же условия, что в конструкторах: не меньше двух точек, абсциссы
+    // строго возрастают (NaN не проходит сравнение)
+    static void checkPoints(double[] xs, double[] ys) throws InvalidObjectException {
+        if (xs == null || ys == null || xs.length != ys.length) {
+            throw new InvalidObjectException("Arrays of x and y must have the same length");
+        }
+        if (xs.length < 2) {
+            throw new InvalidObjectException("Length must be more than 2");
+        }
+        for (int i = 1; i < xs.length; i++) {
+            if (!(xs[i] > xs[i - 1])) {
+                throw new InvalidObjectException("Points must be sorted by X");
+            }
+        }
+    }
+
+}
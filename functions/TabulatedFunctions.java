@@ -1,14 +1,20 @@
 package functions;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Reader;
-import java.io.StreamTokenizer;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class TabulatedFunctions {
     private static final double EPSILON = 1e-9;
@@ -17,8 +23,69 @@ public class TabulatedFunctions {
         // Запрещаем создание экземпляров
     }
 
+    // результат - ArrayTabulatedFunction
     public static TabulatedFunction tabulate(Function function, double leftX, double rightX, int pointsCount) {
+        checkTabulationBounds(function, leftX, rightX, pointsCount);
 
+        double[] xs = new double[pointsCount];
+        double[] ys = new double[pointsCount];
+        fillGrid(function, leftX, rightX, xs, ys, 0, pointsCount);
+        return new ArrayTabulatedFunction(xs, ys);
+    }
+
+    /*
+     * Параллельное табулирование в общем ForkJoinPool. Сетка и значения
+     * совпадают бит в бит с tabulate, поэтому функция должна допускать вызов
+     * getFunctionValue из нескольких потоков одновременно.
+     */
+    public static TabulatedFunction tabulateParallel(Function function, double leftX, double rightX, int pointsCount) {
+        return tabulateParallel(function, leftX, rightX, pointsCount, ForkJoinPool.commonPool());
+    }
+
+    // параллельное табулирование в заданном пуле
+    public static TabulatedFunction tabulateParallel(Function function, double leftX, double rightX, int pointsCount,
+            ForkJoinPool pool) {
+        checkTabulationBounds(function, leftX, rightX, pointsCount);
+
+        double[] xs = new double[pointsCount];
+        double[] ys = new double[pointsCount];
+        pool.invoke(new TabulateTask(function, leftX, rightX, xs, ys, 0, pointsCount));
+        return new ArrayTabulatedFunction(xs, ys);
+    }
+
+    /*
+     * Табулирование в UniformTabulatedFunction: хранятся только ординаты, а
+     * интервал находится без поиска. Удобно для больших таблиц, которые
+     * только читаются: первое изменение, нарушающее сетку (addPoint,
+     * deletePoint, setPoint со сдвигом x), переводит функцию на общие
+     * массивы и копирует всю таблицу. Сетка и значения те же, что у tabulate.
+     */
+    public static UniformTabulatedFunction tabulateUniform(Function function, double leftX, double rightX,
+            int pointsCount) {
+        checkTabulationBounds(function, leftX, rightX, pointsCount);
+
+        double[] ys = new double[pointsCount];
+        fillGrid(function, leftX, rightX, null, ys, 0, pointsCount);
+        return new UniformTabulatedFunction(ys, leftX, rightX);
+    }
+
+    // то же, что tabulateUniform, но узлы вычисляются параллельно в общем ForkJoinPool
+    public static UniformTabulatedFunction tabulateUniformParallel(Function function, double leftX, double rightX,
+            int pointsCount) {
+        return tabulateUniformParallel(function, leftX, rightX, pointsCount, ForkJoinPool.commonPool());
+    }
+
+    // параллельное табулирование в UniformTabulatedFunction в заданном пуле
+    public static UniformTabulatedFunction tabulateUniformParallel(Function function, double leftX, double rightX,
+            int pointsCount, ForkJoinPool pool) {
+        checkTabulationBounds(function, leftX, rightX, pointsCount);
+
+        double[] ys = new double[pointsCount];
+        pool.invoke(new TabulateTask(function, leftX, rightX, null, ys, 0, pointsCount));
+        return new UniformTabulatedFunction(ys, leftX, rightX);
+    }
+
+    private static void checkTabulationBounds(Function function, double leftX, double rightX, int pointsCount) {
         if (leftX >= rightX - EPSILON) {
             throw new IllegalArgumentException("Left border must be less than right border");
         }
@@ -41,98 +108,430 @@ public class TabulatedFunctions {
                     "The right tabulation boundary (" + rightX + ") extends beyond the function's domain ("
                             + domainRight + ").");
         }
+    }
 
-        FunctionPoint[] points = new FunctionPoint[pointsCount];
+    // заполняет значения функции в узлах сетки с номерами [from, to)
+    // (узлы те же, что вычисляет UniformTabulatedFunction), а если xs не null - и сами узлы
+    private static void fillGrid(Function function, double leftX, double rightX, double[] xs, double[] ys,
+            int from, int to) {
+        int pointsCount = ys.length;
         double step = (rightX - leftX) / (pointsCount - 1);
 
-        for (int i = 0; i < pointsCount; i++) {
+        for (int i = from; i < to; i++) {
             double x = leftX + i * step;
             // Корректировка последней точки, чтобы избежать погрешности float
             if (i == pointsCount - 1) {
                 x = rightX;
             }
-            double y = function.getFunctionValue(x);
-            points[i] = new FunctionPoint(x, y);
+            if (xs != null) {
+                xs[i] = x;
+            }
+            ys[i] = function.getFunctionValue(x);
         }
+    }
+
+    // делит отрезок номеров сетки пополам, пока он не станет меньше порога
+    private static final class TabulateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private static final int THRESHOLD = 4096;
+
+        private final Function function;
+        private final double leftX;
+        private final double rightX;
+        private final double[] xs; // null, если узлы не нужны
+        private final double[] ys;
+        private final int from;
+        private final int to;
 
-        return new ArrayTabulatedFunction(points);
+        TabulateTask(Function function, double leftX, double rightX, double[] xs, double[] ys, int from, int to) {
+            this.function = function;
+            this.leftX = leftX;
+            this.rightX = rightX;
+            this.xs = xs;
+            this.ys = ys;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                fillGrid(function, leftX, rightX, xs, ys, from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new TabulateTask(function, leftX, rightX, xs, ys, from, mid),
+                    new TabulateTask(function, leftX, rightX, xs, ys, mid, to));
+        }
+    }
+
+    /*
+     * Адаптивное табулирование: интервалы, на которых линейная интерполяция
+     * отклоняется от функции в середине интервала больше чем на tolerance,
+     * делятся пополам. Первыми делятся интервалы с наибольшей ошибкой, пока
+     * ошибка не станет допустимой везде или число точек не достигнет
+     * maxPoints. Результат - неравномерная сетка, густая только там, где
+     * функция сильно искривлена (например, у полюсов Tan или у нуля для Log).
+     */
+    public static TabulatedFunction tabulateAdaptive(Function function, double leftX, double rightX,
+            double tolerance, int maxPoints) {
+        checkTabulationBounds(function, leftX, rightX, maxPoints);
+        if (!(tolerance > 0)) {
+            throw new IllegalArgumentException("Tolerance must be positive");
+        }
+
+        // начальная равномерная сетка, чтобы не пропустить особенности,
+        // которые не видны из середины всего отрезка
+        int initialPoints = Math.min(ADAPTIVE_INITIAL_POINTS, maxPoints);
+        double[] gridXs = new double[initialPoints];
+        double[] gridYs = new double[initialPoints];
+        fillGrid(function, leftX, rightX, gridXs, gridYs, 0, initialPoints);
+
+        PriorityQueue<Interval> queue = new PriorityQueue<>();
+        Interval first = null;
+        Interval previous = null;
+        for (int i = 0; i < initialPoints - 1; i++) {
+            Interval interval = new Interval(function, gridXs[i], gridYs[i], gridXs[i + 1], gridYs[i + 1]);
+            if (previous == null) {
+                first = interval;
+            } else {
+                previous.next = interval;
+            }
+            previous = interval;
+            queue.add(interval);
+        }
+
+        int pointsCount = initialPoints;
+        while (pointsCount < maxPoints && !queue.isEmpty() && queue.peek().error > tolerance) {
+            Interval interval = queue.poll();
+            if (!interval.divisible()) {
+                continue;
+            }
+            // правая половина становится новым интервалом цепочки, левая остаётся на месте
+            Interval right = new Interval(function, interval.midX, interval.midY, interval.rightX, interval.rightY);
+            right.next = interval.next;
+            interval.next = right;
+            interval.reset(function, interval.midX, interval.midY);
+            queue.add(interval);
+            queue.add(right);
+            pointsCount++;
+        }
+
+        double[] xs = new double[pointsCount];
+        double[] ys = new double[pointsCount];
+        int i = 0;
+        for (Interval interval = first; interval != null; interval = interval.next, i++) {
+            xs[i] = interval.leftX;
+            ys[i] = interval.leftY;
+        }
+        // правый конец всей сетки
+        xs[i] = gridXs[initialPoints - 1];
+        ys[i] = gridYs[initialPoints - 1];
+        return new ArrayTabulatedFunction(xs, ys);
+    }
+
+    private static final int ADAPTIVE_INITIAL_POINTS = 9;
+
+    // Интервал адаптивной сетки. Интервалы связаны в цепочку по возрастанию x,
+    // а в очереди упорядочены по убыванию ошибки интерполяции в середине
+    private static final class Interval implements Comparable<Interval> {
+        final double leftX;
+        final double leftY;
+        double rightX;
+        double rightY;
+        double midX;
+        double midY;
+        double error;
+        Interval next;
+
+        Interval(Function function, double leftX, double leftY, double rightX, double rightY) {
+            this.leftX = leftX;
+            this.leftY = leftY;
+            reset(function, rightX, rightY);
+        }
+
+        // задаёт правый конец и пересчитывает середину и ошибку
+        void reset(Function function, double rightX, double rightY) {
+            this.rightX = rightX;
+            this.rightY = rightY;
+            this.midX = leftX + (rightX - leftX) / 2;
+            this.midY = function.getFunctionValue(midX);
+            this.error = Math.abs(midY - (leftY + rightY) / 2);
+            if (Double.isNaN(error)) {
+                // у полюса или на границе области определения значения бесконечны
+                error = Double.POSITIVE_INFINITY;
+            }
+        }
+
+        // половины интервала должны оставаться различимыми с точностью EPSILON
+        boolean divisible() {
+            return midX - leftX > EPSILON && rightX - midX > EPSILON;
+        }
+
+        @Override
+        public int compareTo(Interval other) {
+            return Double.compare(other.error, error);
+        }
     }
 
     // Вывод табулированной функции в байтовый поток
     public static void outputTabulatedFunction(TabulatedFunction function, OutputStream out) throws IOException {
-        DataOutputStream dataOut = new DataOutputStream(out);
-        int count = function.getPointsCount();
-        dataOut.writeInt(count);
-        for (int i = 0; i < count; i++) {
-            dataOut.writeDouble(function.getPointX(i));
-            dataOut.writeDouble(function.getPointY(i));
-        }
-        dataOut.flush(); // Сбрасываем буфер
+        outputTabulatedFunction(function, out, ByteOrder.BIG_ENDIAN);
+    }
+
+    /*
+     * Вывод в байтовый поток в том же формате (int количество точек, затем пары
+     * x, y), но с заданным порядком байтов. При BIG_ENDIAN результат совпадает
+     * с прежним выводом через DataOutputStream. Числа кодируются блоками через
+     * один буфер, а не по 8 байт за вызов.
+     */
+    public static void outputTabulatedFunction(TabulatedFunction function, OutputStream out, ByteOrder order)
+            throws IOException {
+        encodeBinary(function, order, buffer -> out.write(buffer.array(), buffer.position(), buffer.remaining()));
+        out.flush(); // Сбрасываем буфер
         // Поток не закрываем, согласно заданию (оставляем управление потоком
         // вызывающему коду)
     }
 
+    // вывод в канал в том же формате
+    public static void outputTabulatedFunction(TabulatedFunction function, WritableByteChannel out, ByteOrder order)
+            throws IOException {
+        encodeBinary(function, order, buffer -> {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        });
+    }
+
     public static TabulatedFunction inputTabulatedFunction(InputStream in) throws IOException {
-        DataInputStream dataIn = new DataInputStream(in);
-        int count = dataIn.readInt();
-        FunctionPoint[] points = new FunctionPoint[count];
+        return inputTabulatedFunction(in, ByteOrder.BIG_ENDIAN);
+    }
+
+    // чтение из байтового потока с заданным порядком байтов; из потока
+    // читаются ровно байты функции, данные после неё остаются в потоке
+    public static TabulatedFunction inputTabulatedFunction(InputStream in, ByteOrder order) throws IOException {
+        return toArray(decodeBinary(order, buffer -> {
+            int length = buffer.remaining();
+            if (in.readNBytes(buffer.array(), buffer.position(), length) < length) {
+                throw new EOFException();
+            }
+            buffer.position(buffer.limit());
+        }));
+    }
+
+    // чтение из канала в том же формате
+    public static TabulatedFunction inputTabulatedFunction(ReadableByteChannel in, ByteOrder order)
+            throws IOException {
+        return toArray(inputFrozenTabulatedFunction(in, order));
+    }
+
+    // то же чтение из канала, но сразу в неизменяемый снимок - без
+    // промежуточной ArrayTabulatedFunction и копирования её массивов в freeze()
+    static FrozenTabulatedFunction inputFrozenTabulatedFunction(ReadableByteChannel in, ByteOrder order)
+            throws IOException {
+        return decodeBinary(order, buffer -> {
+            while (buffer.hasRemaining()) {
+                if (in.read(buffer) < 0) {
+                    throw new EOFException();
+                }
+            }
+        });
+    }
 
+    // изменяемая функция на массивах только что прочитанного снимка: снимок
+    // больше никому не доступен, поэтому массивы передаются без копирования
+    private static ArrayTabulatedFunction toArray(FrozenTabulatedFunction points) {
+        return new ArrayTabulatedFunction(points.xs(), points.ys());
+    }
+
+    // размер блока двоичного ввода-вывода в числах double (64 КБ)
+    private static final int IO_BLOCK_DOUBLES = 8192;
+
+    // получатель заполненного буфера (записывает position..limit)
+    private interface BlockWriter {
+        void write(ByteBuffer buffer) throws IOException;
+    }
+
+    // заполняет буфер целиком (position..limit) или выбрасывает EOFException
+    private interface BlockReader {
+        void readFully(ByteBuffer buffer) throws IOException;
+    }
+
+    /*
+     * Согласованный снимок точек: freeze() берётся один раз, поэтому
+     * параллельное изменение функции (например, ConcurrentTabulatedFunction)
+     * не смешает в выводе две версии и не оборвёт запись на середине, а
+     * точки списка не перебираются по индексу.
+     */
+    private static FrozenTabulatedFunction snapshot(TabulatedFunction function) {
+        TabulatedFunction frozen = function.freeze();
+        if (frozen instanceof FrozenTabulatedFunction) {
+            return (FrozenTabulatedFunction) frozen;
+        }
+        int count = frozen.getPointsCount();
+        double[] xs = new double[count];
+        double[] ys = new double[count];
         for (int i = 0; i < count; i++) {
-            double x = dataIn.readDouble();
-            double y = dataIn.readDouble();
-            points[i] = new FunctionPoint(x, y);
+            xs[i] = frozen.getPointX(i);
+            ys[i] = frozen.getPointY(i);
         }
+        return new FrozenTabulatedFunction(xs, ys);
+    }
+
+    private static void encodeBinary(TabulatedFunction function, ByteOrder order, BlockWriter writer)
+            throws IOException {
+        FrozenTabulatedFunction points = snapshot(function);
+        double[] xs = points.xs();
+        double[] ys = points.ys();
+        ByteBuffer buffer = ByteBuffer.allocate(IO_BLOCK_DOUBLES * Double.BYTES).order(order);
+        int count = xs.length;
+        buffer.putInt(count).flip();
+        writer.write(buffer);
 
-        return new ArrayTabulatedFunction(points);
+        double[] block = new double[IO_BLOCK_DOUBLES];
+        for (int i = 0; i < count; ) {
+            int n = Math.min(count - i, IO_BLOCK_DOUBLES / 2);
+            for (int j = 0; j < n; j++) {
+                block[2 * j] = xs[i + j];
+                block[2 * j + 1] = ys[i + j];
+            }
+            buffer.clear();
+            buffer.asDoubleBuffer().put(block, 0, 2 * n);
+            buffer.limit(2 * n * Double.BYTES);
+            writer.write(buffer);
+            i += n;
+        }
     }
 
+    private static FrozenTabulatedFunction decodeBinary(ByteOrder order, BlockReader reader) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(IO_BLOCK_DOUBLES * Double.BYTES).order(order);
+        buffer.limit(Integer.BYTES);
+        reader.readFully(buffer);
+        int count = buffer.flip().getInt();
+        if (count < 0) {
+            throw new IOException("Negative number of points: " + count);
+        }
+
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        double[] block = new double[IO_BLOCK_DOUBLES];
+        for (int i = 0; i < count; ) {
+            int n = Math.min(count - i, IO_BLOCK_DOUBLES / 2);
+            buffer.clear().limit(2 * n * Double.BYTES);
+            reader.readFully(buffer);
+            buffer.flip();
+            buffer.asDoubleBuffer().get(block, 0, 2 * n);
+            for (int j = 0; j < n; j++) {
+                xs[i + j] = block[2 * j];
+                ys[i + j] = block[2 * j + 1];
+            }
+            i += n;
+        }
+        checkSorted(xs);
+        return new FrozenTabulatedFunction(xs, ys);
+    }
+
+    // табулированная функция из прочитанных массивов с теми же проверками,
+    // что и в конструкторе ArrayTabulatedFunction(FunctionPoint[])
+    static ArrayTabulatedFunction fromSortedArrays(double[] xs, double[] ys) {
+        checkSorted(xs);
+        return new ArrayTabulatedFunction(xs, ys);
+    }
+
+    private static void checkSorted(double[] xs) {
+        if (xs.length < 2) {
+            throw new IllegalArgumentException("Length must be more than 2");
+        }
+        for (int i = 1; i < xs.length; i++) {
+            if (!(xs[i] > xs[i - 1])) {
+                throw new IllegalArgumentException("Points must be sorted by X");
+            }
+        }
+    }
+
+    /*
+     * Вывод в символьный поток в формате "count x y x y ...". Числа
+     * записываются Double.toString, который однозначно восстанавливается
+     * при чтении. Текст собирается блоками в переиспользуемый буфер и
+     * передаётся в поток целыми блоками, без PrintWriter на каждое число.
+     */
     public static void writeTabulatedFunction(TabulatedFunction function, Writer out) {
         PrintWriter writer = new PrintWriter(out);
-        int count = function.getPointsCount();
-        writer.print(count);
-        writer.print(" ");
+        StringBuilder text = new StringBuilder(TEXT_BLOCK_SIZE + 64);
+        char[] chars = new char[TEXT_BLOCK_SIZE + 64];
+        FrozenTabulatedFunction points = snapshot(function);
+        double[] xs = points.xs();
+        double[] ys = points.ys();
+        int count = xs.length;
+        text.append(count).append(' ');
         for (int i = 0; i < count; i++) {
-            writer.print(function.getPointX(i));
-            writer.print(" ");
-            writer.print(function.getPointY(i));
-            writer.print(" ");
+            text.append(xs[i]).append(' ');
+            text.append(ys[i]).append(' ');
+            if (text.length() >= TEXT_BLOCK_SIZE) {
+                flushText(text, chars, writer);
+            }
         }
+        flushText(text, chars, writer);
         writer.flush();
     }
 
+    // размер блока текстового вывода в символах
+    private static final int TEXT_BLOCK_SIZE = 8192;
+
+    private static void flushText(StringBuilder text, char[] chars, PrintWriter writer) {
+        int length = text.length();
+        text.getChars(0, length, chars, 0);
+        writer.write(chars, 0, length);
+        text.setLength(0);
+    }
+
+    /*
+     * Чтение из символьного потока в формате "count x y x y ...". Числа
+     * разбираются TextNumberReader: поддерживается экспоненциальная запись,
+     * значения восстанавливаются точно, а в сообщении об ошибке указывается
+     * строка и столбец. Поток читается блоками, поэтому символы после
+     * функции могут быть уже прочитаны из него.
+     */
     public static TabulatedFunction readTabulatedFunction(Reader in) throws IOException {
-        StreamTokenizer tokenizer = new StreamTokenizer(in);
-        // Настраиваем токенайзер, чтобы он не воспринимал конец строки как токен
-        tokenizer.eolIsSignificant(false);
+        TextNumberReader reader = new TextNumberReader(in);
+        int count = reader.nextInt("number of points");
 
-        // Считываем количество точек
-        tokenizer.nextToken();
-        if (tokenizer.ttype != StreamTokenizer.TT_NUMBER) {
-            throw new IOException("Expected number of points");
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = reader.nextDouble("X coordinate", i);
+            ys[i] = reader.nextDouble("Y coordinate", i);
         }
-        int count = (int) tokenizer.nval;
 
-        FunctionPoint[] points = new FunctionPoint[count];
+        return fromSortedArrays(xs, ys);
+    }
 
-        for (int i = 0; i < count; i++) {
-            // Считываем X
-            tokenizer.nextToken();
-            if (tokenizer.ttype != StreamTokenizer.TT_NUMBER) {
-                throw new IOException("Expected X coordinate at index " + i);
-            }
-            double x = tokenizer.nval;
+    // Запись функции в файл формата MappedTabulatedFunction (заголовок и столбцы
+    // чисел). Равномерная сетка сохраняется только границами и ординатами
+    public static void writeMappedTabulatedFunction(TabulatedFunction function, Path path) throws IOException {
+        MappedTabulatedFunction.write(function, path);
+    }
 
-            // Считываем Y
-            tokenizer.nextToken();
-            if (tokenizer.ttype != StreamTokenizer.TT_NUMBER) {
-                throw new IOException("Expected Y coordinate at index " + i);
-            }
-            double y = tokenizer.nval;
+    // Открывает файл формата MappedTabulatedFunction без чтения точек в кучу:
+    // функция вычисляется прямо из отображённой в память области файла
+    public static TabulatedFunction mapTabulatedFunction(Path path) throws IOException {
+        return MappedTabulatedFunction.open(path);
+    }
 
-            points[i] = new FunctionPoint(x, y);
-        }
+    // Вывод в сжатом блочном формате CompressedTabulatedFunction: равномерная
+    // сетка хранится границами, столбцы чисел - XOR-сжатием по блокам
+    public static void writeCompressedTabulatedFunction(TabulatedFunction function, OutputStream out)
+            throws IOException {
+        CompressedTabulatedFunction compressed = (function instanceof CompressedTabulatedFunction)
+                ? (CompressedTabulatedFunction) function
+                : CompressedTabulatedFunction.compress(function);
+        compressed.write(out);
+    }
 
-        return new ArrayTabulatedFunction(points);
+    // Чтение сжатого формата. Точки остаются сжатыми в памяти, при вычислении
+    // распаковывается только блок, содержащий нужный интервал
+    public static TabulatedFunction readCompressedTabulatedFunction(InputStream in) throws IOException {
+        return CompressedTabulatedFunction.read(in);
     }
 
 }
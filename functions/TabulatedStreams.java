@@ -0,0 +1,403 @@
+package functions;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/*
+ * Потоковая обработка табулированных функций, не помещающихся в память.
+ * Точки читаются курсором (PointCursor) из двоичного или текстового формата
+ * TabulatedFunctions и обрабатываются за один проход с постоянной памятью:
+ * вычисление в заданных точках, поиск минимума и максимума, передискретизация
+ * и перезапись в другой формат через PointWriter.
+ */
+public class TabulatedStreams {
+    private static final double EPSILON = 1e-9;
+
+    // размер блока двоичного ввода-вывода в числах double (64 КБ)
+    private static final int BLOCK_DOUBLES = 8192;
+
+    private TabulatedStreams() {
+        // Запрещаем создание экземпляров
+    }
+
+    // курсор по двоичному формату outputTabulatedFunction (big-endian)
+    public static PointCursor openBinary(InputStream in) throws IOException {
+        return openBinary(in, ByteOrder.BIG_ENDIAN);
+    }
+
+    // курсор по двоичному формату с заданным порядком байтов
+    public static PointCursor openBinary(InputStream in, ByteOrder order) throws IOException {
+        return new BinaryCursor(in, order);
+    }
+
+    // курсор по текстовому формату writeTabulatedFunction
+    public static PointCursor openText(Reader in) throws IOException {
+        return new TextCursor(in);
+    }
+
+    // запись в двоичном формате outputTabulatedFunction (big-endian)
+    public static PointWriter binaryWriter(OutputStream out, int pointsCount) throws IOException {
+        return binaryWriter(out, pointsCount, ByteOrder.BIG_ENDIAN);
+    }
+
+    public static PointWriter binaryWriter(OutputStream out, int pointsCount, ByteOrder order) throws IOException {
+        return new BinaryWriter(out, pointsCount, order);
+    }
+
+    // запись в текстовом формате writeTabulatedFunction
+    public static PointWriter textWriter(Writer out, int pointsCount) throws IOException {
+        return new TextWriter(out, pointsCount);
+    }
+
+    // точки курсора как Spliterator; ошибки чтения выбрасываются как UncheckedIOException
+    public static Spliterator<FunctionPoint> spliterator(PointCursor cursor) {
+        return new Spliterators.AbstractSpliterator<FunctionPoint>(cursor.getPointsCount(),
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.SIZED) {
+            @Override
+            public boolean tryAdvance(Consumer<? super FunctionPoint> action) {
+                try {
+                    if (!cursor.next()) {
+                        return false;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                action.accept(new FunctionPoint(cursor.x(), cursor.y()));
+                return true;
+            }
+        };
+    }
+
+    public static Stream<FunctionPoint> stream(PointCursor cursor) {
+        return StreamSupport.stream(spliterator(cursor), false);
+    }
+
+    /*
+     * Значения функции в точках xs, упорядоченных по возрастанию, за один
+     * проход по курсору. Результаты совпадают с getFunctionValue функции,
+     * прочитанной целиком (NaN вне области определения).
+     */
+    public static double[] evaluate(PointCursor cursor, double[] xs) throws IOException {
+        if (!TabulatedArrays.isAscending(xs, 0, xs.length)) {
+            throw new IllegalArgumentException("Points must be sorted by X");
+        }
+        Sweep sweep = new Sweep(cursor);
+        double[] values = new double[xs.length];
+        for (int i = 0; i < xs.length; i++) {
+            values[i] = sweep.valueAt(xs[i]);
+        }
+        return values;
+    }
+
+    // наименьшая и наибольшая ордината: массив {min, max}
+    public static double[] minMax(PointCursor cursor) throws IOException {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        while (cursor.next()) {
+            double y = cursor.y();
+            if (y < min) {
+                min = y;
+            }
+            if (y > max) {
+                max = y;
+            }
+        }
+        return new double[] { min, max };
+    }
+
+    /*
+     * Передискретизация на равномерную сетку из pointsCount точек на [leftX, rightX]
+     * (та же формула сетки, что в TabulatedFunctions.tabulate). Точки сетки
+     * вычисляются по мере чтения курсора и сразу передаются в out.
+     */
+    public static void resample(PointCursor cursor, double leftX, double rightX, int pointsCount, PointWriter out)
+            throws IOException {
+        if (leftX >= rightX - EPSILON) {
+            throw new IllegalArgumentException("Left border must be less than right border");
+        }
+        if (pointsCount < 2) {
+            throw new IllegalArgumentException("Here must be more than 2 points");
+        }
+        Sweep sweep = new Sweep(cursor);
+        double step = (rightX - leftX) / (pointsCount - 1);
+        for (int i = 0; i < pointsCount; i++) {
+            double x = (i == pointsCount - 1) ? rightX : leftX + i * step;
+            out.write(x, sweep.valueAt(x));
+        }
+        out.finish();
+    }
+
+    // перезапись всех точек курсора в другой формат
+    public static void copy(PointCursor cursor, PointWriter out) throws IOException {
+        while (cursor.next()) {
+            out.write(cursor.x(), cursor.y());
+        }
+        out.finish();
+    }
+
+    // Проход по курсору для возрастающих точек запроса. Хранит только текущий
+    // интервал [x0, x1]; правая граница области известна, когда курсор исчерпан
+    private static final class Sweep {
+        private final PointCursor cursor;
+        private final double left;
+        private double x0;
+        private double y0;
+        private double x1;
+        private double y1;
+        private boolean exhausted;
+
+        Sweep(PointCursor cursor) throws IOException {
+            this.cursor = cursor;
+            if (!cursor.next()) {
+                throw new IOException("Function must have at least 2 points");
+            }
+            x0 = cursor.x();
+            y0 = cursor.y();
+            if (!cursor.next()) {
+                throw new IOException("Function must have at least 2 points");
+            }
+            x1 = cursor.x();
+            y1 = cursor.y();
+            left = x0;
+        }
+
+        double valueAt(double x) throws IOException {
+            if (x < left && Math.abs(x - left) > EPSILON) {
+                return Double.NaN;
+            }
+            while (!exhausted && x1 <= x) {
+                if (cursor.next()) {
+                    x0 = x1;
+                    y0 = y1;
+                    x1 = cursor.x();
+                    y1 = cursor.y();
+                } else {
+                    exhausted = true;
+                }
+            }
+            if (exhausted && x > x1 && Math.abs(x - x1) > EPSILON) {
+                return Double.NaN;
+            }
+            if (Math.abs(x - x0) < EPSILON)
+                return y0;
+            if (Math.abs(x - x1) < EPSILON)
+                return y1;
+            return TabulatedArrays.interpolate(x, x0, y0, x1, y1);
+        }
+    }
+
+    // общая часть курсоров: счётчик точек и проверка упорядоченности
+    private abstract static class AbstractCursor implements PointCursor {
+        final int count;
+        int index = -1;
+        double x = Double.NaN;
+        double y = Double.NaN;
+
+        AbstractCursor(int count) throws IOException {
+            if (count < 0) {
+                throw new IOException("Negative number of points: " + count);
+            }
+            this.count = count;
+        }
+
+        public int getPointsCount() {
+            return count;
+        }
+
+        public int index() {
+            return index;
+        }
+
+        public double x() {
+            return x;
+        }
+
+        public double y() {
+            return y;
+        }
+
+        public boolean next() throws IOException {
+            if (index + 1 >= count) {
+                return false;
+            }
+            double previous = x;
+            read(index + 1);
+            if (index >= 0 && !(x > previous)) {
+                throw new IOException("Points must be sorted by X at index " + (index + 1));
+            }
+            index++;
+            return true;
+        }
+
+        // читает точку с номером i в поля x и y
+        abstract void read(int i) throws IOException;
+    }
+
+    private static final class BinaryCursor extends AbstractCursor {
+        private final InputStream in;
+        private final ByteBuffer buffer;
+        private final DoubleBuffer doubles;
+
+        BinaryCursor(InputStream in, ByteOrder order) throws IOException {
+            super(readCount(in, order));
+            this.in = in;
+            this.buffer = ByteBuffer.allocate(BLOCK_DOUBLES * Double.BYTES).order(order);
+            this.doubles = buffer.asDoubleBuffer();
+            doubles.limit(0);
+        }
+
+        private static int readCount(InputStream in, ByteOrder order) throws IOException {
+            byte[] header = new byte[Integer.BYTES];
+            if (in.readNBytes(header, 0, header.length) < header.length) {
+                throw new EOFException();
+            }
+            return ByteBuffer.wrap(header).order(order).getInt();
+        }
+
+        @Override
+        void read(int i) throws IOException {
+            if (!doubles.hasRemaining()) {
+                // читаем ровно столько, сколько осталось от функции, но не больше блока
+                int n = (int) Math.min(2L * (count - i), BLOCK_DOUBLES);
+                int bytes = n * Double.BYTES;
+                if (in.readNBytes(buffer.array(), 0, bytes) < bytes) {
+                    throw new EOFException("Unexpected end of data at point " + i);
+                }
+                doubles.clear().limit(n);
+            }
+            x = doubles.get();
+            y = doubles.get();
+        }
+    }
+
+    private static final class TextCursor extends AbstractCursor {
+        private final TextNumberReader reader;
+
+        TextCursor(Reader in) throws IOException {
+            this(new TextNumberReader(in));
+        }
+
+        private TextCursor(TextNumberReader reader) throws IOException {
+            super(reader.nextInt("number of points"));
+            this.reader = reader;
+        }
+
+        @Override
+        void read(int i) throws IOException {
+            x = reader.nextDouble("X coordinate", i);
+            y = reader.nextDouble("Y coordinate", i);
+        }
+    }
+
+    // общая часть записи: счётчик записанных точек
+    private abstract static class AbstractWriter implements PointWriter {
+        final int count;
+        int written;
+
+        AbstractWriter(int count) {
+            if (count < 0) {
+                throw new IllegalArgumentException("Negative number of points: " + count);
+            }
+            this.count = count;
+        }
+
+        public void write(double x, double y) throws IOException {
+            if (written == count) {
+                throw new IOException("All " + count + " points are already written");
+            }
+            append(x, y);
+            written++;
+        }
+
+        public void finish() throws IOException {
+            flush();
+            if (written != count) {
+                throw new IOException("Written " + written + " points of " + count);
+            }
+        }
+
+        abstract void append(double x, double y) throws IOException;
+
+        abstract void flush() throws IOException;
+    }
+
+    private static final class BinaryWriter extends AbstractWriter {
+        private final OutputStream out;
+        private final ByteBuffer buffer;
+
+        BinaryWriter(OutputStream out, int count, ByteOrder order) throws IOException {
+            super(count);
+            this.out = out;
+            this.buffer = ByteBuffer.allocate(BLOCK_DOUBLES * Double.BYTES).order(order);
+            buffer.putInt(count);
+        }
+
+        @Override
+        void append(double x, double y) throws IOException {
+            if (buffer.remaining() < 2 * Double.BYTES) {
+                drain();
+            }
+            buffer.putDouble(x).putDouble(y);
+        }
+
+        @Override
+        void flush() throws IOException {
+            drain();
+            out.flush();
+        }
+
+        private void drain() throws IOException {
+            out.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+    }
+
+    private static final class TextWriter extends AbstractWriter {
+        private static final int BLOCK_SIZE = 8192;
+
+        private final Writer out;
+        private final StringBuilder text = new StringBuilder(BLOCK_SIZE + 64);
+        private final char[] chars = new char[BLOCK_SIZE + 64];
+
+        TextWriter(Writer out, int count) {
+            super(count);
+            this.out = out;
+            text.append(count).append(' ');
+        }
+
+        @Override
+        void append(double x, double y) throws IOException {
+            text.append(x).append(' ').append(y).append(' ');
+            if (text.length() >= BLOCK_SIZE) {
+                drain();
+            }
+        }
+
+        @Override
+        void flush() throws IOException {
+            drain();
+            out.flush();
+        }
+
+        private void drain() throws IOException {
+            int length = text.length();
+            text.getChars(0, length, chars, 0);
+            out.write(chars, 0, length);
+            text.setLength(0);
+        }
+    }
+
+}
@@ -0,0 +1,346 @@
+package functions;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+// Разбор чисел, разделённых пробельными символами, из символьного потока.
+// Символы читаются блоками в собственный буфер, число собирается в
+// переиспользуемый массив, поэтому на каждое число не создаются объекты.
+// Понимает обычную и экспоненциальную запись (1.2E-5), а также NaN и
+// Infinity, которые выводит Double.toString. Числа до 15 значащих цифр с
+// небольшим порядком вычисляются точно за одно умножение или деление
+// (быстрый путь Клингера), числа до 19 цифр - алгоритмом Эйзеля-Лемира,
+// и только редкие оставшиеся случаи - через Double.parseDouble.
+// В сообщениях об ошибках указываются строка и столбец начала числа
+final class TextNumberReader {
+    private static final int BUFFER_SIZE = 8192;
+
+    // точные степени десяти, представимые в double без округления
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private final Reader in;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    private char[] token = new char[64];
+    private int tokenLength;
+
+    private long line = 1;
+    private long column = 1;
+    private long tokenLine;
+    private long tokenColumn;
+
+    TextNumberReader(Reader in) {
+        this.in = in;
+    }
+
+    // пропускает пробельные символы; false, если поток закончился
+    boolean hasNext() throws IOException {
+        while (true) {
+            if (position == limit && !fill()) {
+                return false;
+            }
+            char c = buffer[position];
+            if (!Character.isWhitespace(c)) {
+                return true;
+            }
+            position++;
+            if (c == '\n') {
+                line++;
+                column = 1;
+            } else {
+                column++;
+            }
+        }
+    }
+
+    // следующее число; what описывает ожидаемое значение для сообщения об ошибке
+    double nextDouble(String what) throws IOException {
+        return nextDouble(what, -1);
+    }
+
+    // то же для значения с номером index (строка сообщения собирается только при ошибке)
+    double nextDouble(String what, long index) throws IOException {
+        readToken(what, index);
+        double value = parse();
+        if (Double.isNaN(value) && !isWord("NaN")) {
+            throw error("Expected " + describe(what, index) + ", found \"" + new String(token, 0, tokenLength) + "\"");
+        }
+        return value;
+    }
+
+    private static String describe(String what, long index) {
+        return index < 0 ? what : what + " at index " + index;
+    }
+
+    // следующее неотрицательное целое число
+    int nextInt(String what) throws IOException {
+        readToken(what, -1);
+        long value = 0;
+        for (int i = 0; i < tokenLength; i++) {
+            char c = token[i];
+            if (c < '0' || c > '9' || (value = value * 10 + (c - '0')) > Integer.MAX_VALUE) {
+                throw error("Expected " + what + ", found \"" + new String(token, 0, tokenLength) + "\"");
+            }
+        }
+        return (int) value;
+    }
+
+    // строка и столбец начала последнего прочитанного числа
+    String tokenPosition() {
+        return "line " + tokenLine + ", column " + tokenColumn;
+    }
+
+    private IOException error(String message) {
+        return new IOException(message + " at " + tokenPosition());
+    }
+
+    private boolean fill() throws IOException {
+        int n = in.read(buffer, 0, BUFFER_SIZE);
+        if (n <= 0) {
+            position = limit = 0;
+            return false;
+        }
+        position = 0;
+        limit = n;
+        return true;
+    }
+
+    // копирует символы до следующего пробельного символа в token
+    private void readToken(String what, long index) throws IOException {
+        if (!hasNext()) {
+            tokenLine = line;
+            tokenColumn = column;
+            throw error("Expected " + describe(what, index) + ", found end of input");
+        }
+        tokenLine = line;
+        tokenColumn = column;
+        tokenLength = 0;
+        while (position < limit || fill()) {
+            char c = buffer[position];
+            if (Character.isWhitespace(c)) {
+                break;
+            }
+            if (tokenLength == token.length) {
+                token = Arrays.copyOf(token, token.length * 2);
+            }
+            token[tokenLength++] = c;
+            position++;
+            column++;
+        }
+    }
+
+    private boolean isWord(String word) {
+        if (tokenLength != word.length()) {
+            return false;
+        }
+        for (int i = 0; i < tokenLength; i++) {
+            if (token[i] != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // разбирает token; для нечислового токена возвращает NaN
+    private double parse() {
+        int i = 0;
+        boolean negative = false;
+        if (i < tokenLength && (token[i] == '+' || token[i] == '-')) {
+            negative = token[i] == '-';
+            i++;
+        }
+        if (tokenLength - i == 8 && token[i] == 'I') {
+            if (!matches(i, "Infinity")) {
+                return Double.NaN;
+            }
+            return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        }
+        if (i == 0 && isWord("NaN")) {
+            return Double.NaN;
+        }
+
+        long mantissa = 0;
+        int significantDigits = 0;
+        int exponent = 0;
+        int digits = 0;
+        boolean exact = true; // мантисса помещается в long без потери цифр
+
+        for (; i < tokenLength && isDigit(token[i]); i++, digits++) {
+            if (mantissa != 0 || token[i] != '0') {
+                if (significantDigits < 19) {
+                    mantissa = mantissa * 10 + (token[i] - '0');
+                    significantDigits++;
+                } else {
+                    exponent++;
+                    exact &= token[i] == '0';
+                }
+            }
+        }
+        if (i < tokenLength && token[i] == '.') {
+            i++;
+            for (; i < tokenLength && isDigit(token[i]); i++, digits++) {
+                if (mantissa != 0 || token[i] != '0') {
+                    if (significantDigits < 19) {
+                        mantissa = mantissa * 10 + (token[i] - '0');
+                        significantDigits++;
+                        exponent--;
+                    } else {
+                        exact &= token[i] == '0';
+                    }
+                } else {
+                    exponent--;
+                }
+            }
+        }
+        if (digits == 0) {
+            return Double.NaN;
+        }
+        if (i < tokenLength && (token[i] == 'e' || token[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < tokenLength && (token[i] == '+' || token[i] == '-')) {
+                negativeExponent = token[i] == '-';
+                i++;
+            }
+            int start = i;
+            int value = 0;
+            for (; i < tokenLength && isDigit(token[i]); i++) {
+                if (value < 100000) {
+                    value = value * 10 + (token[i] - '0');
+                }
+            }
+            if (i == start) {
+                return Double.NaN;
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+        if (i != tokenLength) {
+            return Double.NaN;
+        }
+
+        if (mantissa == 0) {
+            return negative ? -0.0 : 0.0;
+        }
+        // быстрый путь: мантисса и степень десяти точны в double, результат
+        // получается одной корректно округлённой операцией
+        if (exact && mantissa >= 0 && mantissa < (1L << 53) && exponent >= -22 && exponent <= 22) {
+            double value = (double) mantissa;
+            value = exponent >= 0 ? value * POWERS_OF_TEN[exponent] : value / POWERS_OF_TEN[-exponent];
+            return negative ? -value : value;
+        }
+        if (exact) {
+            double value = eiselLemire(mantissa, exponent);
+            if (!Double.isNaN(value)) {
+                return negative ? -value : value;
+            }
+        }
+        return Double.parseDouble(new String(token, 0, tokenLength));
+    }
+
+    // Алгоритм Эйзеля-Лемира: w * 10^q (w - беззнаковое, до 19 цифр)
+    // по 128-битному приближению 5^q. Возвращает NaN, если результат нельзя
+    // гарантированно округлить верно или он выходит из диапазона нормальных
+    // чисел; тогда число разбирается Double.parseDouble
+    private static double eiselLemire(long w, int q) {
+        if (q < MIN_POWER_OF_FIVE || q > MAX_POWER_OF_FIVE) {
+            return Double.NaN;
+        }
+        int lz = Long.numberOfLeadingZeros(w);
+        w <<= lz;
+
+        int index = 2 * (q - MIN_POWER_OF_FIVE);
+        long high = unsignedMultiplyHigh(w, POWERS_OF_FIVE[index]);
+        long low = w * POWERS_OF_FIVE[index];
+        if ((high & 0x1FF) == 0x1FF) {
+            // младших 64 бит приближения не хватило - уточняем вторым словом
+            long secondHigh = unsignedMultiplyHigh(w, POWERS_OF_FIVE[index + 1]);
+            low += secondHigh;
+            if (Long.compareUnsigned(secondHigh, low) > 0) {
+                high++;
+            }
+        }
+        if (low == -1L) {
+            return Double.NaN;
+        }
+
+        int upperBit = (int) (high >>> 63);
+        long mantissa = high >>> (upperBit + 9);
+        int power2 = (((152170 + 65536) * q) >> 16) + 63 + upperBit - lz + 1023;
+        if (power2 <= 0) {
+            return Double.NaN; // субнормальные числа
+        }
+        // точно посередине между двумя double - округляем к чётному
+        if (Long.compareUnsigned(low, 1) <= 0 && q >= -4 && q <= 23 && (mantissa & 3) == 1
+                && (mantissa << (upperBit + 9)) == high) {
+            mantissa &= ~1L;
+        }
+        mantissa += mantissa & 1;
+        mantissa >>>= 1;
+        if (mantissa >= (2L << 52)) {
+            mantissa = 1L << 52;
+            power2++;
+        }
+        if (power2 >= 0x7FF) {
+            return Double.NaN;
+        }
+        return Double.longBitsToDouble((mantissa & ~(1L << 52)) | ((long) power2 << 52));
+    }
+
+    private static long unsignedMultiplyHigh(long a, long b) {
+        return Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+    }
+
+    private static final int MIN_POWER_OF_FIVE = -342;
+    private static final int MAX_POWER_OF_FIVE = 308;
+
+    // 128-битные приближения 5^q для q из [MIN_POWER_OF_FIVE, MAX_POWER_OF_FIVE]:
+    // по два слова (старшее, младшее) с единицей в старшем бите. Для q >= 0
+    // значение усечено, для q < 0 округлено вверх
+    private static final long[] POWERS_OF_FIVE = powersOfFive();
+
+    private static long[] powersOfFive() {
+        long[] table = new long[2 * (MAX_POWER_OF_FIVE - MIN_POWER_OF_FIVE + 1)];
+        BigInteger five = BigInteger.valueOf(5);
+        BigInteger mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+        for (int q = MIN_POWER_OF_FIVE; q <= MAX_POWER_OF_FIVE; q++) {
+            BigInteger c;
+            if (q >= 0) {
+                c = five.pow(q);
+                int bits = c.bitLength();
+                c = bits <= 128 ? c.shiftLeft(128 - bits) : c.shiftRight(bits - 128);
+            } else {
+                BigInteger power = five.pow(-q);
+                int z = power.subtract(BigInteger.ONE).bitLength(); // наименьшее z: 2^z >= 5^-q
+                int b = (q >= -27) ? z + 127 : 2 * z + 128;
+                c = BigInteger.ONE.shiftLeft(b).divide(power).add(BigInteger.ONE);
+                if (c.bitLength() > 128) {
+                    c = c.shiftRight(c.bitLength() - 128);
+                }
+            }
+            int index = 2 * (q - MIN_POWER_OF_FIVE);
+            table[index] = c.shiftRight(64).longValue();
+            table[index + 1] = c.and(mask).longValue();
+        }
+        return table;
+    }
+
+    private boolean matches(int from, String word) {
+        for (int k = 0; k < word.length(); k++) {
+            if (token[from + k] != word.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+}
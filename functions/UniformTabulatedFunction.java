@@ -0,0 +1,270 @@
+package functions;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamException;
+import java.util.Arrays;
+
+/*
+ * Табулированная функция на равномерной сетке. Хранятся только границы и
+ * массив ординат, абсциссы вычисляются как в TabulatedFunctions.tabulate:
+ * leftX + i * step, последняя равна rightX. Памяти нужно вдвое меньше, чем
+ * ArrayTabulatedFunction, а интервал для x находится вычислением индекса.
+ *
+ * Изменение ординат сетку не нарушает. Если же изменение абсцисс, удаление
+ * или добавление точек делает сетку неравномерной, функция один раз
+ * переходит на общее представление (ArrayTabulatedFunction) и дальше
+ * передаёт ему все вызовы; для вызывающего кода объект остаётся тем же.
+ */
+public class UniformTabulatedFunction implements TabulatedFunction {
+    private static final long serialVersionUID = 1L;
+    private static final double EPSILON = 1e-9;
+
+    private double leftX;
+    private double rightX;
+    private double step;
+    private double[] ys; // null после перехода на общее представление
+    private ArrayTabulatedFunction general;
+
+    // равномерная сетка из pointsCount точек с нулевыми значениями
+    public UniformTabulatedFunction(double leftX, double rightX, int pointsCount) {
+        this(leftX, rightX, new double[checkPointsCount(pointsCount)]);
+    }
+
+    // равномерная сетка со значениями функции из массива (массив копируется)
+    public UniformTabulatedFunction(double leftX, double rightX, double[] values) {
+        this(Arrays.copyOf(values, checkPointsCount(values.length)), leftX, rightX);
+    }
+
+    // принимает массив ординат (не менее двух) во владение без копирования
+    UniformTabulatedFunction(double[] ys, double leftX, double rightX) {
+        if (leftX >= rightX || Math.abs(leftX - rightX) < EPSILON) {
+            throw new IllegalArgumentException("\nThe left boundary is bigger than the right\n");
+        }
+        this.leftX = leftX;
+        this.rightX = rightX;
+        this.ys = ys;
+        this.step = (rightX - leftX) / (ys.length - 1);
+    }
+
+    // объект, уже перешедший на общее представление (при чтении из потока)
+    UniformTabulatedFunction(ArrayTabulatedFunction general) {
+        this.general = general;
+    }
+
+    private static int checkPointsCount(int pointsCount) {
+        if (pointsCount < 2) {
+            throw new IllegalArgumentException("\nPoint number must be bigger than 2\n");
+        }
+        return pointsCount;
+    }
+
+    // хранится ли функция до сих пор как равномерная сетка
+    public boolean isUniformGrid() {
+        return general == null;
+    }
+
+    public double getLeftDomainBorder() {
+        return (general != null) ? general.getLeftDomainBorder() : leftX;
+    }
+
+    public double getRightDomainBorder() {
+        return (general != null) ? general.getRightDomainBorder() : rightX;
+    }
+
+    public int getPointsCount() {
+        return (general != null) ? general.getPointsCount() : ys.length;
+    }
+
+    private double x(int i) {
+        return (i == ys.length - 1) ? rightX : leftX + i * step;
+    }
+
+    public double getFunctionValue(double x) {
+        if (general != null) {
+            return general.getFunctionValue(x);
+        }
+        if ((x > rightX && Math.abs(x - rightX) > EPSILON) ||
+                (x < leftX && Math.abs(x - leftX) > EPSILON))
+            return Double.NaN;
+
+        int i = findInterval(x);
+        double x0 = x(i);
+        double x1 = x(i + 1);
+        if (Math.abs(x - x0) < EPSILON)
+            return ys[i];
+        if (Math.abs(x - x1) < EPSILON)
+            return ys[i + 1];
+        return TabulatedArrays.interpolate(x, x0, ys[i], x1, ys[i + 1]);
+    }
+
+    // индекс левого конца интервала, содержащего x (как TabulatedArrays.findInterval)
+    private int findInterval(double x) {
+        int last = ys.length - 2;
+        int i = (int) ((x - leftX) / step);
+        if (i < 0) {
+            i = 0;
+        } else if (i > last) {
+            i = last;
+        }
+        // поправка на погрешность вычисления индекса
+        while (i > 0 && x(i) > x) {
+            i--;
+        }
+        while (i < last && x(i + 1) <= x) {
+            i++;
+        }
+        return i;
+    }
+
+    @Override
+    public void evaluate(double[] in, int inOffset, double[] out, int outOffset, int length) {
+        if (general != null) {
+            general.evaluate(in, inOffset, out, outOffset, length);
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            out[outOffset + i] = getFunctionValue(in[inOffset + i]);
+        }
+    }
+
+    public FunctionPoint getPoint(int index) {
+        if (general != null) {
+            return general.getPoint(index);
+        }
+        checkIndex(index);
+        return new FunctionPoint(x(index), ys[index]);
+    }
+
+    public double getPointX(int index) {
+        if (general != null) {
+            return general.getPointX(index);
+        }
+        checkIndex(index);
+        return x(index);
+    }
+
+    public double getPointY(int index) {
+        if (general != null) {
+            return general.getPointY(index);
+        }
+        checkIndex(index);
+        return ys[index];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= ys.length) {
+            throw new FunctionPointIndexOutOfBoundsException();
+        }
+    }
+
+    public void setPoint(int index, FunctionPoint point) throws InappropriateFunctionPointException {
+        if (general == null) {
+            checkIndex(index);
+            if (point.getX() == x(index)) {
+                ys[index] = point.getY();
+                return;
+            }
+        }
+        ArrayTabulatedFunction target = toGeneral();
+        target.setPoint(index, point);
+        general = target;
+        ys = null;
+    }
+
+    public void setPointX(int index, double x) throws InappropriateFunctionPointException {
+        if (general == null) {
+            checkIndex(index);
+            if (x == x(index)) {
+                return;
+            }
+        }
+        ArrayTabulatedFunction target = toGeneral();
+        target.setPointX(index, x);
+        general = target;
+        ys = null;
+    }
+
+    public void setPointY(int index, double y) {
+        if (general != null) {
+            general.setPointY(index, y);
+            return;
+        }
+        checkIndex(index);
+        ys[index] = y;
+    }
+
+    // удаление пересчитало бы шаг сетки и сдвинуло бы абсциссы в последних
+    // разрядах, поэтому после него функция хранится в общем виде
+    public void deletePoint(int index) {
+        ArrayTabulatedFunction target = toGeneral();
+        target.deletePoint(index);
+        general = target;
+        ys = null;
+    }
+
+    public void addPoint(FunctionPoint point) throws InappropriateFunctionPointException {
+        ArrayTabulatedFunction target = toGeneral();
+        target.addPoint(point);
+        general = target;
+        ys = null;
+    }
+
+    public void addPoints(double[] newXs, double[] newYs, PointConflictPolicy policy)
+            throws InappropriateFunctionPointException {
+        ArrayTabulatedFunction target = toGeneral();
+        target.addPoints(newXs, newYs, policy);
+        general = target;
+        ys = null;
+    }
+
+    // Общее представление, к которому применяется изменение. Пока функция
+    // равномерна, это новая копия точек: если изменение отклонено
+    // исключением, объект остаётся равномерным и не меняется
+    private ArrayTabulatedFunction toGeneral() {
+        if (general != null) {
+            return general;
+        }
+        return new ArrayTabulatedFunction(xs(), Arrays.copyOf(ys, ys.length));
+    }
+
+    private double[] xs() {
+        double[] xs = new double[ys.length];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = x(i);
+        }
+        return xs;
+    }
+
+    @Override
+    public TabulatedFunction freeze() {
+        if (general != null) {
+            return general.freeze();
+        }
+        return new FrozenTabulatedFunction(xs(), Arrays.copyOf(ys, ys.length));
+    }
+
+    // равномерная сетка сериализуется границами и ординатами, общее
+    // представление - массивами точек; в обоих случаях читается объект
+    // этого же класса
+    private Object writeReplace() throws ObjectStreamException {
+        if (general != null) {
+            int count = general.getPointsCount();
+            double[] xs = new double[count];
+            double[] ys = new double[count];
+            for (int i = 0; i < count; i++) {
+                xs[i] = general.getPointX(i);
+                ys[i] = general.getPointY(i);
+            }
+            return new TabulatedFunctionProxy(TabulatedFunctionProxy.UNIFORM_GENERAL, xs, ys);
+        }
+        return new TabulatedFunctionProxy(TabulatedFunctionProxy.UNIFORM,
+                new double[] { leftX, rightX }, Arrays.copyOf(ys, ys.length));
+    }
+
+    // объект читается только через TabulatedFunctionProxy с проверкой точек
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("Serialization proxy required");
+    }
+
+}
@@ -5,4 +5,11 @@ public class Cos extends TrigonometricFunction{
     public double getFunctionValue(double x) {
         return Math.cos(x);
     }
+
+    @Override
+    public void evaluate(double[] xs, int xsOffset, double[] out, int outOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            out[outOffset + i] = Math.cos(xs[xsOffset + i]);
+        }
+    }
 }
@@ -19,6 +19,13 @@ public class Exp implements Function {
         return Math.exp(x);
     }
 
+    @Override
+    public void evaluate(double[] xs, int xsOffset, double[] out, int outOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            out[outOffset + i] = Math.exp(xs[xsOffset + i]);
+        }
+    }
+
     /*
      * Создайте в пакете публичный класс Exp, объекты которого должны вычислять
      * значение экспоненты. Класс должен реализовывать интерфейс Function. Для
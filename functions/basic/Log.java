@@ -14,6 +14,10 @@ public class Log implements Function {
         this.foundation = foundation;
     }
 
+    public double getFoundation() {
+        return foundation;
+    }
+
     @Override
     public double getLeftDomainBorder() {
         return 0;
@@ -29,6 +33,15 @@ public class Log implements Function {
         // Используем формулу смены основания: log_base(x) = ln(x) / ln(base)
         return Math.log(x) / Math.log(foundation);
     }
+
+    @Override
+    public void evaluate(double[] xs, int xsOffset, double[] out, int outOffset, int length) {
+        // логарифм основания вычисляем один раз на весь массив
+        double lnFoundation = Math.log(foundation);
+        for (int i = 0; i < length; i++) {
+            out[outOffset + i] = Math.log(xs[xsOffset + i]) / lnFoundation;
+        }
+    }
     /*
      * Аналогично, создайте класс Log, объекты которого должны вычислять значение
      * логарифма по заданному основанию. Основание должно передаваться как параметр
@@ -5,4 +5,11 @@ public class Sin extends TrigonometricFunction{
     public double getFunctionValue(double x) {
         return Math.sin(x);
     }
+
+    @Override
+    public void evaluate(double[] xs, int xsOffset, double[] out, int outOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            out[outOffset + i] = Math.sin(xs[xsOffset + i]);
+        }
+    }
 }
@@ -5,4 +5,11 @@ public class Tan extends TrigonometricFunction{
     public double getFunctionValue(double x) {
         return Math.tan(x);
     }
+
+    @Override
+    public void evaluate(double[] xs, int xsOffset, double[] out, int outOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            out[outOffset + i] = Math.tan(xs[xsOffset + i]);
+        }
+    }
 }
@@ -0,0 +1,338 @@
+package functions.meta;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+import functions.Function;
+
+/*
+ * Функция, запоминающая ограниченное число последних вычисленных значений
+ * исходной функции. Ключ - биты числа x (Double.doubleToRawLongBits), так
+ * что 0.0 и -0.0 кэшируются раздельно. Обёртку можно поставить в любой узел
+ * дерева functions.meta, например над дорогой композицией табулированных
+ * функций, которую многократно вычисляют на одной и той же сетке.
+ *
+ * Кэш разбит на сегменты, каждый - таблица с открытой адресацией (линейное
+ * пробирование) на массивах примитивов, поэтому попадание не создаёт
+ * объектов. Поиск выполняется оптимистично (StampedLock.tryOptimisticRead)
+ * и не мешает другим читателям; вставка берёт блокировку записи сегмента.
+ * Исходная функция вычисляется вне блокировок.
+ *
+ * Вытеснение - CLOCK: при попадании у записи ставится бит обращения, а
+ * стрелка при вытеснении снимает эти биты и удаляет первую запись без него.
+ * Это приближение LRU, которому не нужна запись в общую структуру (перенос
+ * в начало списка) при каждом попадании.
+ *
+ * Кэш предполагает, что значения исходной функции не меняются. После
+ * изменения точек табулированной функции внутри дерева нужно вызвать clear().
+ */
+public class CachedFunction implements Function {
+    private static final int MAX_SEGMENTS = 16;
+
+    // Значения хранятся битами Double.doubleToLongBits, который приводит все
+    // NaN к одному виду, поэтому другой NaN-код свободен для обозначения промаха
+    private static final long MISS = 0x7ff0000000000001L;
+
+    private final Function fun;
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // capacity - наибольшее число запомненных значений
+    public CachedFunction(Function fun, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Cache capacity must be positive");
+        }
+        this.fun = fun;
+        int count = Math.min(MAX_SEGMENTS, Integer.highestOneBit(capacity));
+        this.segments = new Segment[count];
+        this.segmentMask = count - 1;
+        for (int i = 0; i < count; i++) {
+            // ёмкость делится между сегментами, остаток достаётся первым
+            segments[i] = new Segment(capacity / count + (i < capacity % count ? 1 : 0));
+        }
+    }
+
+    @Override
+    public double getLeftDomainBorder() {
+        return fun.getLeftDomainBorder();
+    }
+
+    @Override
+    public double getRightDomainBorder() {
+        return fun.getRightDomainBorder();
+    }
+
+    @Override
+    public double getFunctionValue(double x) {
+        long key = Double.doubleToRawLongBits(x);
+        long hash = mix(key);
+        Segment segment = segments[(int) hash & segmentMask];
+        long bits = segment.lookup(key, hash);
+        if (bits != MISS) {
+            hits.increment();
+            return Double.longBitsToDouble(bits);
+        }
+        misses.increment();
+        double value = fun.getFunctionValue(x);
+        segment.put(key, hash, value);
+        return value;
+    }
+
+    /*
+     * Пакетное вычисление: значения из кэша подставляются сразу, а точки
+     * без значения одним пакетом передаются в evaluate исходной функции.
+     */
+    @Override
+    public void evaluate(double[] xs, int xsOffset, double[] out, int outOffset, int length) {
+        int[] missing = null;
+        double[] missingXs = null;
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            double x = xs[xsOffset + i];
+            long key = Double.doubleToRawLongBits(x);
+            long hash = mix(key);
+            long bits = segments[(int) hash & segmentMask].lookup(key, hash);
+            if (bits != MISS) {
+                out[outOffset + i] = Double.longBitsToDouble(bits);
+                continue;
+            }
+            if (missing == null) {
+                missing = new int[length - i];
+                missingXs = new double[length - i];
+            }
+            missing[count] = i;
+            missingXs[count] = x;
+            count++;
+        }
+        hits.add(length - count);
+        if (count == 0) {
+            return;
+        }
+        misses.add(count);
+        double[] values = new double[count];
+        fun.evaluate(missingXs, 0, values, 0, count);
+        for (int j = 0; j < count; j++) {
+            long key = Double.doubleToRawLongBits(missingXs[j]);
+            long hash = mix(key);
+            segments[(int) hash & segmentMask].put(key, hash, values[j]);
+            out[outOffset + missing[j]] = values[j];
+        }
+    }
+
+    // перемешивание битов ключа (финализатор MurmurHash3): у чисел вроде
+    // целых младшие биты мантиссы нулевые, а здесь младшие биты хэша выбирают
+    // сегмент, старшие - ячейку, поэтому нужна полная лавина
+    private static long mix(long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    // доля попаданий среди всех обращений (0, если обращений не было)
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return (total == 0) ? 0 : (double) h / total;
+    }
+
+    // текущее число запомненных значений
+    public int getSize() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    // забывает все значения (например, после изменения табулированной функции)
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    // Сегмент кэша: таблица с линейным пробированием, заполненная не более
+    // чем наполовину, и стрелка CLOCK
+    private final class Segment {
+        private final StampedLock lock = new StampedLock();
+        private final int capacity;
+        private final int shift;
+        private final int mask;
+        private final long[] keys;
+        private final long[] values;
+        private final boolean[] occupied;
+        private final boolean[] referenced;
+        private int size;
+        private int hand;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+            int tableSize = Integer.highestOneBit(capacity) << 2; // не меньше 2 * capacity
+            this.shift = 64 - Integer.numberOfTrailingZeros(tableSize);
+            this.mask = tableSize - 1;
+            this.keys = new long[tableSize];
+            this.values = new long[tableSize];
+            this.occupied = new boolean[tableSize];
+            this.referenced = new boolean[tableSize];
+        }
+
+        // начальная ячейка ключа - старшие биты хэша
+        private int home(long hash) {
+            return (int) (hash >>> shift);
+        }
+
+        // ячейка с ключом или -1. При оптимистичном чтении таблица может
+        // меняться, поэтому число проб ограничено её размером
+        private int find(long key, long hash) {
+            int i = home(hash);
+            for (int probes = 0; probes <= mask; probes++) {
+                if (!occupied[i]) {
+                    return -1;
+                }
+                if (keys[i] == key) {
+                    return i;
+                }
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+
+        // биты значения или MISS
+        long lookup(long key, long hash) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0L) {
+                int i = find(key, hash);
+                long bits = (i >= 0) ? values[i] : MISS;
+                if (lock.validate(stamp)) {
+                    if (i >= 0) {
+                        // бит обращения хранится отдельно от занятости ячейки, поэтому
+                        // запись без блокировки в худшем случае пометит соседнюю запись
+                        referenced[i] = true;
+                    }
+                    return bits;
+                }
+            }
+            stamp = lock.readLock();
+            try {
+                int i = find(key, hash);
+                if (i < 0) {
+                    return MISS;
+                }
+                referenced[i] = true;
+                return values[i];
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        void put(long key, long hash, double value) {
+            long stamp = lock.writeLock();
+            try {
+                int i = find(key, hash);
+                if (i >= 0) {
+                    values[i] = Double.doubleToLongBits(value); // другой поток успел вставить
+                    return;
+                }
+                if (size == capacity) {
+                    evict();
+                }
+                i = home(hash);
+                while (occupied[i]) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                values[i] = Double.doubleToLongBits(value);
+                referenced[i] = false;
+                occupied[i] = true;
+                size++;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        // CLOCK: записи с битом обращения получают второй шанс
+        private void evict() {
+            while (true) {
+                int i = hand;
+                hand = (hand + 1) & mask;
+                if (!occupied[i]) {
+                    continue;
+                }
+                if (referenced[i]) {
+                    referenced[i] = false;
+                    continue;
+                }
+                remove(i);
+                evictions.increment();
+                return;
+            }
+        }
+
+        // удаление с обратным сдвигом: записи за удалённой, которые при
+        // вставке прошли через её ячейку, сдвигаются назад, чтобы поиск не
+        // останавливался на образовавшейся дыре
+        private void remove(int hole) {
+            int j = hole;
+            while (true) {
+                j = (j + 1) & mask;
+                if (!occupied[j]) {
+                    break;
+                }
+                int k = home(mix(keys[j]));
+                // запись остаётся, если её начальная ячейка циклически лежит в (hole, j]
+                boolean stays = (hole <= j) ? (hole < k && k <= j) : (hole < k || k <= j);
+                if (stays) {
+                    continue;
+                }
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                referenced[hole] = referenced[j];
+                hole = j;
+            }
+            occupied[hole] = false;
+            referenced[hole] = false;
+            size--;
+        }
+
+        int size() {
+            long stamp = lock.readLock();
+            try {
+                return size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        void clear() {
+            long stamp = lock.writeLock();
+            try {
+                Arrays.fill(occupied, false);
+                Arrays.fill(referenced, false);
+                size = 0;
+                hand = 0;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+}
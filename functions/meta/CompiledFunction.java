@@ -0,0 +1,25 @@
+package functions.meta;
+
+import functions.Function;
+
+// Базовый класс функций, которые FunctionCompiler генерирует во время
+// выполнения. Сгенерированный класс реализует только вычисление значений,
+// область определения берётся у исходного дерева
+abstract class CompiledFunction implements Function {
+    private final Function source;
+
+    CompiledFunction(Function source) {
+        this.source = source;
+    }
+
+    @Override
+    public double getLeftDomainBorder() {
+        return source.getLeftDomainBorder();
+    }
+
+    @Override
+    public double getRightDomainBorder() {
+        return source.getRightDomainBorder();
+    }
+
+}
@@ -18,6 +18,15 @@ public class Composition implements Function {
         this.fun2 = fun2;
     }
 
+    // составные части для оптимизаторов пакета: внешняя fun1 и внутренняя fun2
+    Function getOuter() {
+        return fun1;
+    }
+
+    Function getInner() {
+        return fun2;
+    }
+
     @Override
     public double getLeftDomainBorder() {
         return (fun2.getLeftDomainBorder());
@@ -34,4 +43,11 @@ public class Composition implements Function {
         return fun1.getFunctionValue(x1);
     }
 
+    @Override
+    public void evaluate(double[] xs, int xsOffset, double[] out, int outOffset, int length) {
+        // сначала весь массив через внутреннюю функцию, затем на месте через внешнюю
+        fun2.evaluate(xs, xsOffset, out, outOffset, length);
+        fun1.evaluate(out, outOffset, out, outOffset, length);
+    }
+
 }
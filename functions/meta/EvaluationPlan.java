@@ -0,0 +1,418 @@
+package functions.meta;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import functions.Function;
+import functions.basic.Cos;
+import functions.basic.Exp;
+import functions.basic.Log;
+import functions.basic.Sin;
+import functions.basic.Tan;
+
+/*
+ * План вычисления дерева функций, в котором общие подвыражения считаются
+ * один раз. Дерево Shift/Scale/Power/Sum/Mult/Composition разворачивается в
+ * граф значений: каждое значение - операция над уже вычисленными значениями
+ * (аргумент x, вызов листа, сдвиг, степень, сумма и т.д.). Одинаковые
+ * значения склеиваются: листья сравниваются по ссылке (табулированная функция
+ * может измениться), а Sin, Cos, Tan, Exp и Log с одним основанием - по
+ * классу. Так в sum(power(sin, 2), power(cos, 2)) с одним объектом sin в
+ * обеих ветвях или в f(g(x)) + h(g(x)) функция g вычисляется один раз, и
+ * стоимость определяется числом различных узлов, а не размером дерева.
+ *
+ * Операции повторяют вычисления узлов functions.meta (x - shiftX, затем
+ * + shiftY и т.д.), поэтому значения совпадают с исходным деревом.
+ * Промежуточные значения хранятся в регистрах, которые переиспользуются
+ * после последнего чтения; пакет вычисляется блоками, и каждый лист
+ * вызывается через evaluate один раз на блок.
+ */
+public final class EvaluationPlan implements Function {
+    private static final int INPUT = 0;
+    private static final int LEAF = 1;
+    private static final int SUBTRACT = 2;  // v - c
+    private static final int ADD = 3;       // v + c
+    private static final int DIVIDE = 4;    // v / c
+    private static final int MULTIPLY = 5;  // v * c
+    private static final int POWER = 6;     // pow(v, c)
+    private static final int SUM = 7;       // v1 + v2
+    private static final int PRODUCT = 8;   // v1 * v2
+
+    // размер блока пакетного вычисления
+    private static final int BLOCK = 512;
+
+    private final Function source;
+    private final int[] kinds;
+    private final int[] operands1;
+    private final int[] operands2;
+    private final double[] constants;
+    private final Function[] leaves;
+    private final int[] registers;
+    private final int registerCount;
+    private final int result;
+    // регистры скалярного вычисления, свои у каждого потока
+    private final ThreadLocal<Registers> scalarRegisters;
+
+    public EvaluationPlan(Function source) {
+        this.source = source;
+        Builder builder = new Builder();
+        this.result = builder.build(source, 0);
+        int n = builder.kinds.size();
+        this.kinds = new int[n];
+        this.operands1 = new int[n];
+        this.operands2 = new int[n];
+        this.constants = new double[n];
+        this.leaves = new Function[n];
+        for (int i = 0; i < n; i++) {
+            kinds[i] = builder.kinds.get(i);
+            operands1[i] = builder.operands1.get(i);
+            operands2[i] = builder.operands2.get(i);
+            constants[i] = builder.constants.get(i);
+            leaves[i] = builder.leaves.get(i);
+        }
+        this.registers = new int[n];
+        this.registerCount = allocateRegisters();
+        this.scalarRegisters = ThreadLocal.withInitial(() -> new Registers(registerCount));
+    }
+
+    // Регистры потока; busy защищает от повторного входа, если лист сам
+    // вычисляет этот же план
+    private static final class Registers {
+        final double[] values;
+        boolean busy;
+
+        Registers(int count) {
+            this.values = new double[count];
+        }
+    }
+
+    /*
+     * Назначение регистров: значение занимает регистр до последнего чтения,
+     * после чего регистр отдаётся следующим значениям. Регистр операнда,
+     * прочитанного последний раз, может сразу стать регистром результата:
+     * все операции (и Function.evaluate) допускают вычисление на месте.
+     */
+    private int allocateRegisters() {
+        int n = kinds.length;
+        int[] lastUse = new int[n];
+        for (int i = 0; i < n; i++) {
+            lastUse[i] = i;
+        }
+        for (int i = 0; i < n; i++) {
+            if (kinds[i] != INPUT) {
+                lastUse[operands1[i]] = i;
+            }
+            if (kinds[i] == SUM || kinds[i] == PRODUCT) {
+                lastUse[operands2[i]] = i;
+            }
+        }
+        lastUse[result] = n;
+        int[] free = new int[n];
+        int freeCount = 0;
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (kinds[i] != INPUT) {
+                if (lastUse[operands1[i]] == i) {
+                    free[freeCount++] = registers[operands1[i]];
+                }
+                if ((kinds[i] == SUM || kinds[i] == PRODUCT) && operands2[i] != operands1[i]
+                        && lastUse[operands2[i]] == i) {
+                    free[freeCount++] = registers[operands2[i]];
+                }
+            }
+            registers[i] = (freeCount > 0) ? free[--freeCount] : count++;
+        }
+        return count;
+    }
+
+    // число различных вычисляемых узлов (без аргумента x)
+    public int getNodeCount() {
+        return kinds.length - 1;
+    }
+
+    // число регистров для промежуточных значений
+    public int getRegisterCount() {
+        return registerCount;
+    }
+
+    @Override
+    public double getLeftDomainBorder() {
+        return source.getLeftDomainBorder();
+    }
+
+    @Override
+    public double getRightDomainBorder() {
+        return source.getRightDomainBorder();
+    }
+
+    @Override
+    public double getFunctionValue(double x) {
+        Registers registers = scalarRegisters.get();
+        if (registers.busy) {
+            return value(x, new double[registerCount]);
+        }
+        registers.busy = true;
+        try {
+            return value(x, registers.values);
+        } finally {
+            registers.busy = false;
+        }
+    }
+
+    private double value(double x, double[] r) {
+        for (int i = 0; i < kinds.length; i++) {
+            double v;
+            switch (kinds[i]) {
+                case INPUT:
+                    v = x;
+                    break;
+                case LEAF:
+                    v = leaves[i].getFunctionValue(r[registers[operands1[i]]]);
+                    break;
+                case SUBTRACT:
+                    v = r[registers[operands1[i]]] - constants[i];
+                    break;
+                case ADD:
+                    v = r[registers[operands1[i]]] + constants[i];
+                    break;
+                case DIVIDE:
+                    v = r[registers[operands1[i]]] / constants[i];
+                    break;
+                case MULTIPLY:
+                    v = r[registers[operands1[i]]] * constants[i];
+                    break;
+                case POWER:
+                    v = Power.pow(r[registers[operands1[i]]], constants[i]);
+                    break;
+                case SUM:
+                    v = r[registers[operands1[i]]] + r[registers[operands2[i]]];
+                    break;
+                default:
+                    v = r[registers[operands1[i]]] * r[registers[operands2[i]]];
+                    break;
+            }
+            r[registers[i]] = v;
+        }
+        return r[registers[result]];
+    }
+
+    @Override
+    public void evaluate(double[] xs, int xsOffset, double[] out, int outOffset, int length) {
+        double[][] r = new double[registerCount][Math.min(length, BLOCK)];
+        for (int start = 0; start < length; start += BLOCK) {
+            int len = Math.min(BLOCK, length - start);
+            for (int i = 0; i < kinds.length; i++) {
+                double[] v = r[registers[i]];
+                double[] a = (kinds[i] == INPUT) ? null : r[registers[operands1[i]]];
+                double c = constants[i];
+                switch (kinds[i]) {
+                    case INPUT:
+                        System.arraycopy(xs, xsOffset + start, v, 0, len);
+                        break;
+                    case LEAF:
+                        leaves[i].evaluate(a, 0, v, 0, len);
+                        break;
+                    case SUBTRACT:
+                        for (int j = 0; j < len; j++) {
+                            v[j] = a[j] - c;
+                        }
+                        break;
+                    case ADD:
+                        for (int j = 0; j < len; j++) {
+                            v[j] = a[j] + c;
+                        }
+                        break;
+                    case DIVIDE:
+                        for (int j = 0; j < len; j++) {
+                            v[j] = a[j] / c;
+                        }
+                        break;
+                    case MULTIPLY:
+                        for (int j = 0; j < len; j++) {
+                            v[j] = a[j] * c;
+                        }
+                        break;
+                    case POWER:
+                        for (int j = 0; j < len; j++) {
+                            v[j] = Power.pow(a[j], c);
+                        }
+                        break;
+                    case SUM: {
+                        double[] b = r[registers[operands2[i]]];
+                        for (int j = 0; j < len; j++) {
+                            v[j] = a[j] + b[j];
+                        }
+                        break;
+                    }
+                    default: {
+                        double[] b = r[registers[operands2[i]]];
+                        for (int j = 0; j < len; j++) {
+                            v[j] = a[j] * b[j];
+                        }
+                        break;
+                    }
+                }
+            }
+            System.arraycopy(r[registers[result]], 0, out, outOffset + start, len);
+        }
+    }
+
+    // Ключ узла графа: операция, операнды и константа
+    private static final class Key {
+        final int kind;
+        final int operand1;
+        final int operand2;
+        final long constant;
+
+        Key(int kind, int operand1, int operand2, double constant) {
+            this.kind = kind;
+            this.operand1 = operand1;
+            this.operand2 = operand2;
+            this.constant = Double.doubleToLongBits(constant);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return kind == key.kind && operand1 == key.operand1
+                    && operand2 == key.operand2 && constant == key.constant;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = kind;
+            h = 31 * h + operand1;
+            h = 31 * h + operand2;
+            return 31 * h + Long.hashCode(constant);
+        }
+    }
+
+    // Построение графа с единственным узлом для каждого различного значения
+    private static final class Builder {
+        final List<Integer> kinds = new ArrayList<>();
+        final List<Integer> operands1 = new ArrayList<>();
+        final List<Integer> operands2 = new ArrayList<>();
+        final List<Double> constants = new ArrayList<>();
+        final List<Function> leaves = new ArrayList<>();
+
+        final Map<Key, Integer> nodes = new HashMap<>();
+        // номера листов: по ссылке и (для функций без состояния) по виду
+        final Map<Function, Integer> leafIds = new IdentityHashMap<>();
+        final Map<Object, Integer> basicLeafIds = new HashMap<>();
+        // уже разобранные пары (функция, аргумент), чтобы общие поддеревья
+        // не обходились повторно
+        final Map<Function, Map<Integer, Integer>> visited = new IdentityHashMap<>();
+
+        Builder() {
+            add(INPUT, -1, -1, 0, null);
+        }
+
+        // узел значения function(значение arg)
+        int build(Function function, int arg) {
+            Map<Integer, Integer> byArg = visited.computeIfAbsent(function, f -> new HashMap<>());
+            Integer known = byArg.get(arg);
+            if (known != null) {
+                return known;
+            }
+            int node = expand(function, arg);
+            byArg.put(arg, node);
+            return node;
+        }
+
+        // как в Expression.of: раскрываются только узлы точных классов,
+        // подклассы вычисляются как листья своим getFunctionValue
+        private int expand(Function function, int arg) {
+            if (function.getClass() == Identity.class && ((Identity) function).isUnbounded()) {
+                return arg;
+            }
+            if (function.getClass() == Shift.class) {
+                Shift shift = (Shift) function;
+                int x = unary(SUBTRACT, arg, shift.getShiftX());
+                return unary(ADD, build(shift.getFunction(), x), shift.getShiftY());
+            }
+            if (function.getClass() == Scale.class) {
+                Scale scale = (Scale) function;
+                int x = unary(DIVIDE, arg, scale.getScaleX());
+                return unary(MULTIPLY, build(scale.getFunction(), x), scale.getScaleY());
+            }
+            if (function.getClass() == Power.class) {
+                Power power = (Power) function;
+                return unary(POWER, build(power.getFunction(), arg), power.getPower());
+            }
+            if (function.getClass() == Composition.class) {
+                Composition composition = (Composition) function;
+                return build(composition.getOuter(), build(composition.getInner(), arg));
+            }
+            if (function.getClass() == Sum.class) {
+                Sum sum = (Sum) function;
+                return binary(SUM, build(sum.getFirst(), arg), build(sum.getSecond(), arg));
+            }
+            if (function.getClass() == Mult.class) {
+                Mult mult = (Mult) function;
+                return binary(PRODUCT, build(mult.getFirst(), arg), build(mult.getSecond(), arg));
+            }
+            return intern(new Key(LEAF, arg, leafId(function), 0), arg, -1, 0, function);
+        }
+
+        // x - 0, x / 1 и x * 1 точны и не добавляют узлов; x + 0 меняет -0.0
+        private int unary(int kind, int arg, double constant) {
+            if ((kind == SUBTRACT && constant == 0) || ((kind == DIVIDE || kind == MULTIPLY) && constant == 1)) {
+                return arg;
+            }
+            return intern(new Key(kind, arg, -1, constant), arg, -1, constant, null);
+        }
+
+        // сложение и умножение коммутативны, поэтому операнды упорядочиваются
+        private int binary(int kind, int first, int second) {
+            int a = Math.min(first, second);
+            int b = Math.max(first, second);
+            return intern(new Key(kind, a, b, 0), a, b, 0, null);
+        }
+
+        private int leafId(Function function) {
+            Object kind = basicKind(function);
+            if (kind != null) {
+                return basicLeafIds.computeIfAbsent(kind, k -> basicLeafIds.size() + leafIds.size());
+            }
+            return leafIds.computeIfAbsent(function, f -> basicLeafIds.size() + leafIds.size());
+        }
+
+        // вид базовой функции без изменяемого состояния (или null)
+        private static Object basicKind(Function function) {
+            Class<?> type = function.getClass();
+            if (type == Sin.class || type == Cos.class || type == Tan.class || type == Exp.class) {
+                return type;
+            }
+            if (type == Log.class) {
+                return ((Log) function).getFoundation();
+            }
+            return null;
+        }
+
+        private int intern(Key key, int operand1, int operand2, double constant, Function leaf) {
+            Integer node = nodes.get(key);
+            if (node != null) {
+                return node;
+            }
+            int id = add(key.kind, operand1, operand2, constant, leaf);
+            nodes.put(key, id);
+            return id;
+        }
+
+        private int add(int kind, int operand1, int operand2, double constant, Function leaf) {
+            kinds.add(kind);
+            operands1.add(operand1);
+            operands2.add(operand2);
+            constants.add(constant);
+            leaves.add(leaf);
+            return kinds.size() - 1;
+        }
+    }
+
+}
@@ -0,0 +1,457 @@
+package functions.meta;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import functions.Function;
+
+/*
+ * Промежуточное представление дерева функций для FusedFunction. Вместо
+ * вложенных объектов Shift/Scale/Power/Composition выражение хранится как
+ * цепочка стадий (Chain), каждая из которых преобразует текущее значение:
+ * линейное a * v + b, возведение в степень, вызов исходной функции и т.д.
+ * Сумма и произведение - n-арные узлы с вынесенной константой.
+ *
+ * При построении соседние линейные стадии сливаются в одну, вложенные
+ * суммы и произведения разворачиваются, а константы сворачиваются.
+ * Слияние выполняется, только если новая константа вычисляется точно
+ * (exactSum, exactProduct): иначе, например, 1e200 * 1e200 переполнилось бы,
+ * а 1e16 + 1 округлилось бы, и результат разошёлся бы с деревом не в
+ * последних разрядах. Такие стадии остаются раздельными. Оставшиеся
+ * отличия - порядок округлений (x / k заменяется на x * (1 / k), сдвиги
+ * слагаемых выносятся в общую константу).
+ */
+abstract class Expression {
+    // размер блока пакетного вычисления n-арных узлов
+    private static final int BLOCK = 512;
+
+    // значение выражения в точке x
+    abstract double value(double x);
+
+    // пакетное вычисление с тем же контрактом, что у Function.evaluate:
+    // массивы xs и out могут совпадать (при равных смещениях)
+    abstract void evaluate(double[] xs, int xsOffset, double[] out, int outOffset, int length);
+
+    // строит выражение по дереву функций пакета functions.meta; узлы
+    // распознаются по точному классу: подкласс Shift, Sum и т. п. может
+    // переопределить getFunctionValue и потому остаётся листом
+    static Expression of(Function function) {
+        if (function instanceof FusedFunction) {
+            return ((FusedFunction) function).getExpression();
+        }
+        if (function.getClass() == Shift.class) {
+            Shift shift = (Shift) function;
+            return chain(new Linear(1, -shift.getShiftX()), of(shift.getFunction()),
+                    new Linear(1, shift.getShiftY()));
+        }
+        if (function.getClass() == Scale.class) {
+            Scale scale = (Scale) function;
+            double inverse = 1 / scale.getScaleX();
+            if (!Double.isFinite(inverse) || inverse == 0) {
+                return new Leaf(function); // x / k нельзя заменить умножением
+            }
+            return chain(new Linear(1 / scale.getScaleX(), -0.0), of(scale.getFunction()),
+                    new Linear(scale.getScaleY(), -0.0));
+        }
+        if (function.getClass() == Identity.class && ((Identity) function).isUnbounded()) {
+            return Linear.IDENTITY;
+        }
+        if (function.getClass() == Power.class) {
+            Power power = (Power) function;
+            return chain(of(power.getFunction()), new Pow(power.getPower()));
+        }
+        if (function.getClass() == Composition.class) {
+            Composition composition = (Composition) function;
+            return chain(of(composition.getInner()), of(composition.getOuter()));
+        }
+        if (function.getClass() == Sum.class) {
+            Sum sum = (Sum) function;
+            return sum(of(sum.getFirst()), of(sum.getSecond()));
+        }
+        if (function.getClass() == Mult.class) {
+            Mult mult = (Mult) function;
+            return product(of(mult.getFirst()), of(mult.getSecond()));
+        }
+        return new Leaf(function);
+    }
+
+    /*
+     * Последовательное применение стадий: вложенные цепочки разворачиваются,
+     * соседние линейные стадии сливаются, тождественные выбрасываются.
+     * Стадии после константы вычисляются сразу, если это линейные стадии или
+     * степени; всё, что стоит до константы, на результат не влияет.
+     */
+    static Expression chain(Expression... parts) {
+        List<Expression> stages = new ArrayList<>();
+        for (Expression part : parts) {
+            if (part instanceof Chain) {
+                for (Expression stage : ((Chain) part).stages) {
+                    append(stages, stage);
+                }
+            } else {
+                append(stages, part);
+            }
+        }
+        if (stages.isEmpty()) {
+            return Linear.IDENTITY;
+        }
+        if (stages.size() == 1) {
+            return stages.get(0);
+        }
+        return new Chain(stages.toArray(new Expression[0]));
+    }
+
+    private static void append(List<Expression> stages, Expression stage) {
+        if (stage instanceof Constant) {
+            stages.clear();
+            stages.add(stage);
+            return;
+        }
+        Expression last = stages.isEmpty() ? null : stages.get(stages.size() - 1);
+        if (last instanceof Constant && (stage instanceof Linear || stage instanceof Pow)) {
+            stages.set(stages.size() - 1, new Constant(stage.value(((Constant) last).value)));
+            return;
+        }
+        if (stage instanceof Linear) {
+            Linear linear = (Linear) stage;
+            if (last instanceof Linear) {
+                // a2 * (a1 * v + b1) + b2 = (a2 * a1) * v + (a2 * b1 + b2)
+                Linear previous = (Linear) last;
+                double b1 = linear.a * previous.b;
+                if (exactProduct(linear.a, previous.a) && exactProduct(linear.a, previous.b)
+                        && exactSum(b1, linear.b)) {
+                    linear = new Linear(linear.a * previous.a, b1 + linear.b);
+                    stages.remove(stages.size() - 1);
+                    last = stages.isEmpty() ? null : stages.get(stages.size() - 1);
+                }
+            }
+            if (last instanceof NarySum && linear.a == 1 && exactSum(((NarySum) last).constant, linear.b)) {
+                NarySum sum = (NarySum) last; // (Σ + c) + b
+                stages.set(stages.size() - 1, new NarySum(sum.terms, sum.constant + linear.b));
+                return;
+            }
+            if (last instanceof NaryProduct && linear.b == 0
+                    && exactProduct(((NaryProduct) last).constant, linear.a)) {
+                NaryProduct product = (NaryProduct) last; // (c * Π) * a
+                stages.set(stages.size() - 1, new NaryProduct(product.factors, product.constant * linear.a));
+                return;
+            }
+            if (!linear.isIdentity()) {
+                stages.add(linear);
+            }
+            return;
+        }
+        if (stage instanceof Pow && ((Pow) stage).power == 1) {
+            return; // pow(v, 1) == v
+        }
+        if (stage instanceof Pow && ((Pow) stage).power == 0) {
+            stages.clear(); // pow(v, 0) == 1 для любого v, включая NaN
+            stages.add(new Constant(1));
+            return;
+        }
+        stages.add(stage);
+    }
+
+    // n-арная сумма: вложенные суммы разворачиваются, сдвиги слагаемых и
+    // константы собираются в одну константу
+    static Expression sum(Expression... parts) {
+        List<Expression> terms = new ArrayList<>();
+        double constant = -0.0; // -0.0 + v == v для любого v
+        for (Expression part : parts) {
+            if (part instanceof NarySum && exactSum(constant, ((NarySum) part).constant)) {
+                terms.addAll(Arrays.asList(((NarySum) part).terms));
+                constant += ((NarySum) part).constant;
+                continue;
+            }
+            if (part instanceof Constant && exactSum(constant, ((Constant) part).value)) {
+                constant += ((Constant) part).value;
+                continue;
+            }
+            Linear tail = trailingLinear(part);
+            if (tail != null && tail.b != 0 && exactSum(constant, tail.b)) {
+                constant += tail.b;
+                part = replaceTail(part, new Linear(tail.a, -0.0));
+            }
+            terms.add(part);
+        }
+        if (terms.isEmpty()) {
+            return new Constant(constant);
+        }
+        if (terms.size() == 1) {
+            return chain(terms.get(0), new Linear(1, constant));
+        }
+        return new NarySum(terms.toArray(new Expression[0]), constant);
+    }
+
+    // n-арное произведение: вложенные произведения разворачиваются,
+    // коэффициенты сомножителей и константы собираются в одну константу
+    static Expression product(Expression... parts) {
+        List<Expression> factors = new ArrayList<>();
+        double constant = 1;
+        for (Expression part : parts) {
+            if (part instanceof NaryProduct && exactProduct(constant, ((NaryProduct) part).constant)) {
+                factors.addAll(Arrays.asList(((NaryProduct) part).factors));
+                constant *= ((NaryProduct) part).constant;
+                continue;
+            }
+            if (part instanceof Constant && exactProduct(constant, ((Constant) part).value)) {
+                constant *= ((Constant) part).value;
+                continue;
+            }
+            Linear tail = trailingLinear(part);
+            if (tail != null && tail.b == 0 && exactProduct(constant, tail.a)) {
+                constant *= tail.a;
+                part = replaceTail(part, Linear.IDENTITY);
+            }
+            factors.add(part);
+        }
+        if (factors.isEmpty()) {
+            return new Constant(constant);
+        }
+        if (factors.size() == 1) {
+            return chain(factors.get(0), new Linear(constant, -0.0));
+        }
+        return new NaryProduct(factors.toArray(new Expression[0]), constant);
+    }
+
+    // a + b вычисляется без округления (остаток TwoSum равен нулю), конечна
+    // и не обращается в ноль при ненулевых слагаемых
+    static boolean exactSum(double a, double b) {
+        double s = a + b;
+        if (!Double.isFinite(s) || (s == 0 && (a != 0 || b != 0))) {
+            return false;
+        }
+        double bv = s - a;
+        double av = s - bv;
+        return (a - av) + (b - bv) == 0;
+    }
+
+    // a * b вычисляется без округления (Math.fma(a, b, -p) == 0), конечно и
+    // не обращается в ноль при ненулевых сомножителях
+    static boolean exactProduct(double a, double b) {
+        double p = a * b;
+        if (!Double.isFinite(p) || (p == 0 && a != 0 && b != 0)) {
+            return false;
+        }
+        return Math.fma(a, b, -p) == 0;
+    }
+
+    // последняя линейная стадия выражения (или null)
+    private static Linear trailingLinear(Expression expression) {
+        if (expression instanceof Linear) {
+            return (Linear) expression;
+        }
+        if (expression instanceof Chain) {
+            Expression[] stages = ((Chain) expression).stages;
+            Expression last = stages[stages.length - 1];
+            return (last instanceof Linear) ? (Linear) last : null;
+        }
+        return null;
+    }
+
+    // то же выражение с заменённой последней линейной стадией
+    private static Expression replaceTail(Expression expression, Linear tail) {
+        if (expression instanceof Linear) {
+            return tail;
+        }
+        Expression[] stages = ((Chain) expression).stages.clone();
+        stages[stages.length - 1] = tail;
+        return chain(stages);
+    }
+
+    // Константа: не зависит от аргумента
+    static final class Constant extends Expression {
+        final double value;
+
+        Constant(double value) {
+            this.value = value;
+        }
+
+        @Override
+        double value(double x) {
+            return value;
+        }
+
+        @Override
+        void evaluate(double[] xs, int xsOffset, double[] out, int outOffset, int length) {
+            Arrays.fill(out, outOffset, outOffset + length, value);
+        }
+    }
+
+    // Линейная стадия a * v + b (слитые сдвиги и масштабирования)
+    static final class Linear extends Expression {
+        // прибавление -0.0 не меняет ни одного значения, а +0.0 превращает -0.0 в 0.0,
+        // поэтому "нет сдвига" - это b = -0.0
+        static final Linear IDENTITY = new Linear(1, -0.0);
+
+        final double a;
+        final double b;
+
+        Linear(double a, double b) {
+            this.a = a;
+            this.b = b;
+        }
+
+        boolean isIdentity() {
+            return a == 1 && Double.doubleToRawLongBits(b) == Double.doubleToRawLongBits(-0.0);
+        }
+
+        @Override
+        double value(double x) {
+            return a * x + b;
+        }
+
+        @Override
+        void evaluate(double[] xs, int xsOffset, double[] out, int outOffset, int length) {
+            for (int i = 0; i < length; i++) {
+                out[outOffset + i] = a * xs[xsOffset + i] + b;
+            }
+        }
+    }
+
+    // Возведение текущего значения в степень
+    static final class Pow extends Expression {
+        final double power;
+
+        Pow(double power) {
+            this.power = power;
+        }
+
+        @Override
+        double value(double x) {
+            return Power.pow(x, power);
+        }
+
+        @Override
+        void evaluate(double[] xs, int xsOffset, double[] out, int outOffset, int length) {
+            for (int i = 0; i < length; i++) {
+                out[outOffset + i] = Power.pow(xs[xsOffset + i], power);
+            }
+        }
+    }
+
+    // Функция, которую оптимизатор не разбирает (базовая, табулированная и т.д.)
+    static final class Leaf extends Expression {
+        final Function function;
+
+        Leaf(Function function) {
+            this.function = function;
+        }
+
+        @Override
+        double value(double x) {
+            return function.getFunctionValue(x);
+        }
+
+        @Override
+        void evaluate(double[] xs, int xsOffset, double[] out, int outOffset, int length) {
+            function.evaluate(xs, xsOffset, out, outOffset, length);
+        }
+    }
+
+    // Последовательность стадий: значение каждой передаётся следующей
+    static final class Chain extends Expression {
+        final Expression[] stages;
+
+        Chain(Expression[] stages) {
+            this.stages = stages;
+        }
+
+        @Override
+        double value(double x) {
+            double v = x;
+            for (Expression stage : stages) {
+                v = stage.value(v);
+            }
+            return v;
+        }
+
+        @Override
+        void evaluate(double[] xs, int xsOffset, double[] out, int outOffset, int length) {
+            // первая стадия переносит значения в out, остальные работают на месте
+            stages[0].evaluate(xs, xsOffset, out, outOffset, length);
+            for (int s = 1; s < stages.length; s++) {
+                stages[s].evaluate(out, outOffset, out, outOffset, length);
+            }
+        }
+    }
+
+    // Сумма слагаемых плюс константа
+    static final class NarySum extends Expression {
+        final Expression[] terms;
+        final double constant;
+
+        NarySum(Expression[] terms, double constant) {
+            this.terms = terms;
+            this.constant = constant;
+        }
+
+        @Override
+        double value(double x) {
+            double v = constant;
+            for (Expression term : terms) {
+                v += term.value(x);
+            }
+            return v;
+        }
+
+        @Override
+        void evaluate(double[] xs, int xsOffset, double[] out, int outOffset, int length) {
+            // блоками; аргументы блока копируются, т.к. out может совпадать с xs
+            double[] args = new double[Math.min(length, BLOCK)];
+            double[] values = new double[args.length];
+            for (int start = 0; start < length; start += BLOCK) {
+                int len = Math.min(BLOCK, length - start);
+                int to = outOffset + start;
+                System.arraycopy(xs, xsOffset + start, args, 0, len);
+                Arrays.fill(out, to, to + len, constant);
+                for (Expression term : terms) {
+                    term.evaluate(args, 0, values, 0, len);
+                    for (int i = 0; i < len; i++) {
+                        out[to + i] += values[i];
+                    }
+                }
+            }
+        }
+    }
+
+    // Произведение сомножителей на константу
+    static final class NaryProduct extends Expression {
+        final Expression[] factors;
+        final double constant;
+
+        NaryProduct(Expression[] factors, double constant) {
+            this.factors = factors;
+            this.constant = constant;
+        }
+
+        @Override
+        double value(double x) {
+            double v = constant;
+            for (Expression factor : factors) {
+                v *= factor.value(x);
+            }
+            return v;
+        }
+
+        @Override
+        void evaluate(double[] xs, int xsOffset, double[] out, int outOffset, int length) {
+            double[] args = new double[Math.min(length, BLOCK)];
+            double[] values = new double[args.length];
+            for (int start = 0; start < length; start += BLOCK) {
+                int len = Math.min(BLOCK, length - start);
+                int to = outOffset + start;
+                System.arraycopy(xs, xsOffset + start, args, 0, len);
+                Arrays.fill(out, to, to + len, constant);
+                for (Expression factor : factors) {
+                    factor.evaluate(args, 0, values, 0, len);
+                    for (int i = 0; i < len; i++) {
+                        out[to + i] *= values[i];
+                    }
+                }
+            }
+        }
+    }
+
+}
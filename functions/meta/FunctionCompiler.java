@@ -0,0 +1,550 @@
+package functions.meta;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import functions.Function;
+import functions.basic.Cos;
+import functions.basic.Exp;
+import functions.basic.Log;
+import functions.basic.Sin;
+import functions.basic.Tan;
+
+/*
+ * Компиляция дерева функций в отдельный класс во время выполнения.
+ * Дерево сначала упрощается так же, как в FusedFunction (Expression), затем
+ * для него генерируется байт-код скрытого класса (Lookup.defineHiddenClass):
+ * getFunctionValue и цикл пакетного evaluate - линейный код без виртуальных
+ * вызовов между узлами. Базовые функции вызывают Math.sin, Math.exp,
+ * Math.log и т.д. напрямую, остальные листья (например, табулированные
+ * функции) хранятся в static final полях скрытого класса, которые JIT
+ * считает константами, поэтому и их вызовы встраиваются.
+ *
+ * Значения совпадают бит в бит с FusedFunction для того же дерева.
+ * Если код получается больше предела, после которого JIT не компилирует
+ * метод (HugeMethodLimit, 8000 байт), возвращается FusedFunction.
+ * Сгенерированный класс выгружается, когда функция становится недостижимой.
+ */
+public final class FunctionCompiler {
+    private static final int HUGE_METHOD_LIMIT = 8000;
+
+    private static final String BASE = "functions/meta/CompiledFunction";
+    private static final String FUNCTION = "functions/Function";
+
+    private FunctionCompiler() {
+        // Запрещаем создание экземпляров
+    }
+
+    public static Function compile(Function function) {
+        Expression expression = Expression.of(function);
+        Generator generator = new Generator();
+        byte[] bytes = generator.generate(expression);
+        if (bytes == null) {
+            return new FusedFunction(function, expression);
+        }
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup()
+                    .defineHiddenClassWithClassData(bytes, generator.leaves.toArray(), true);
+            return (Function) lookup.findConstructor(lookup.lookupClass(),
+                    MethodType.methodType(void.class, Function.class)).invoke(function);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot define compiled function class", e);
+        }
+    }
+
+    // Генерация class-файла: наследник CompiledFunction с полями листьев
+    private static final class Generator {
+        private final ConstantPool pool = new ConstantPool();
+        private final List<Function> leaves = new ArrayList<>();
+        private final Map<Function, Integer> leafIndex = new IdentityHashMap<>();
+
+        byte[] generate(Expression expression) {
+            // константы для ldc в <clinit> должны попасть в первые 256 ячеек пула
+            pool.string("_");
+            pool.classRef("[Ljava/lang/Object;");
+
+            Code value = new Code(3);
+            emit(value, expression, 1);
+            value.op(0xaf, -2); // dreturn
+            Code batch = batchLoop(expression);
+            if (value.length() > HUGE_METHOD_LIMIT || batch.length() > HUGE_METHOD_LIMIT) {
+                return null;
+            }
+
+            int thisClass = pool.classRef(BASE + "$Generated");
+            int superClass = pool.classRef(BASE);
+            List<byte[]> methods = new ArrayList<>();
+            methods.add(method(0x0000, "<init>", "(L" + FUNCTION + ";)V", constructor()));
+            methods.add(method(0x0001, "getFunctionValue", "(D)D", value));
+            methods.add(method(0x0001, "evaluate", "([DI[DII)V", batch));
+            if (!leaves.isEmpty()) {
+                methods.add(method(0x0008, "<clinit>", "()V", staticInitializer()));
+            }
+
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeInt(0xCAFEBABE);
+                out.writeShort(0);
+                out.writeShort(61); // Java 17
+                pool.writeTo(out);
+                out.writeShort(0x0030); // ACC_FINAL | ACC_SUPER
+                out.writeShort(thisClass);
+                out.writeShort(superClass);
+                out.writeShort(0); // интерфейсы наследуются от CompiledFunction
+                out.writeShort(leaves.size());
+                for (int i = 0; i < leaves.size(); i++) {
+                    out.writeShort(0x001a); // private static final
+                    out.writeShort(pool.utf8(leafName(i)));
+                    out.writeShort(pool.utf8("L" + FUNCTION + ";"));
+                    out.writeShort(0);
+                }
+                out.writeShort(methods.size());
+                for (byte[] method : methods) {
+                    out.write(method);
+                }
+                out.writeShort(0);
+                return bytes.toByteArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private static String leafName(int i) {
+            return "leaf" + i;
+        }
+
+        // значение выражения от аргумента в локальной переменной slot - на вершину стека
+        private void emit(Code code, Expression expression, int slot) {
+            if (expression instanceof Expression.Constant) {
+                code.dconst(pool, ((Expression.Constant) expression).value);
+            } else if (expression instanceof Expression.Linear) {
+                Expression.Linear linear = (Expression.Linear) expression;
+                code.dload(slot);
+                if (linear.a != 1) {
+                    code.dconst(pool, linear.a);
+                    code.op(0x6b, -2); // dmul
+                }
+                // прибавление -0.0 не меняет ни одного значения, +0.0 меняет -0.0
+                if (Double.doubleToRawLongBits(linear.b) != Double.doubleToRawLongBits(-0.0)) {
+                    code.dconst(pool, linear.b);
+                    code.op(0x63, -2); // dadd
+                }
+            } else if (expression instanceof Expression.Pow) {
+                code.dload(slot);
+                code.dconst(pool, ((Expression.Pow) expression).power);
+                // показатель - константа, после встраивания Power.pow от него остаётся одна ветка
+                code.invokeStatic(pool, "functions/meta/Power", "pow", "(DD)D", -2);
+            } else if (expression instanceof Expression.Chain) {
+                Expression[] stages = ((Expression.Chain) expression).stages;
+                int current = slot;
+                for (int s = 0; s < stages.length - 1; s++) {
+                    emit(code, stages[s], current);
+                    current = code.newDoubleLocal();
+                    code.dstore(current);
+                }
+                emit(code, stages[stages.length - 1], current);
+            } else if (expression instanceof Expression.NarySum) {
+                Expression.NarySum sum = (Expression.NarySum) expression;
+                code.dconst(pool, sum.constant);
+                for (Expression term : sum.terms) {
+                    emit(code, term, slot);
+                    code.op(0x63, -2); // dadd
+                }
+            } else if (expression instanceof Expression.NaryProduct) {
+                Expression.NaryProduct product = (Expression.NaryProduct) expression;
+                code.dconst(pool, product.constant);
+                for (Expression factor : product.factors) {
+                    emit(code, factor, slot);
+                    code.op(0x6b, -2); // dmul
+                }
+            } else {
+                emitLeaf(code, ((Expression.Leaf) expression).function, slot);
+            }
+        }
+
+        // базовые функции - прямой вызов Math (подклассы могут переопределять
+        // значения, поэтому класс сравнивается точно); остальные - через поле
+        private void emitLeaf(Code code, Function function, int slot) {
+            Class<?> type = function.getClass();
+            String math = null;
+            if (type == Sin.class) {
+                math = "sin";
+            } else if (type == Cos.class) {
+                math = "cos";
+            } else if (type == Tan.class) {
+                math = "tan";
+            } else if (type == Exp.class) {
+                math = "exp";
+            }
+            if (math != null) {
+                code.dload(slot);
+                code.invokeStatic(pool, "java/lang/Math", math, "(D)D", 0);
+                return;
+            }
+            if (type == Log.class) {
+                // как в Log.getFunctionValue: Math.log(x) / Math.log(foundation)
+                code.dload(slot);
+                code.invokeStatic(pool, "java/lang/Math", "log", "(D)D", 0);
+                code.dconst(pool, Math.log(((Log) function).getFoundation()));
+                code.op(0x6f, -2); // ddiv
+                return;
+            }
+
+            Integer index = leafIndex.get(function);
+            if (index == null) {
+                index = leaves.size();
+                leaves.add(function);
+                leafIndex.put(function, index);
+            }
+            code.op(0xb2, 1); // getstatic
+            code.u2(pool.field(BASE + "$Generated", leafName(index), "L" + FUNCTION + ";"));
+            code.dload(slot);
+            code.op(0xb9, -1); // invokeinterface getFunctionValue(D)D
+            code.u2(pool.interfaceMethod(FUNCTION, "getFunctionValue", "(D)D"));
+            code.u1(3);
+            code.u1(0);
+        }
+
+        /*
+         * evaluate(double[] xs, int xsOffset, double[] out, int outOffset, int length):
+         *   for (int i = 0; i < length; i++) {
+         *       double x = xs[xsOffset + i];
+         *       out[outOffset + i] = <выражение от x>;
+         *   }
+         * x читается до записи, поэтому xs и out могут совпадать
+         */
+        private Code batchLoop(Expression expression) {
+            Code code = new Code(9); // 0 this, 1 xs, 2 xsOffset, 3 out, 4 outOffset, 5 length, 6 i, 7-8 x
+            code.op(0x03, 1); // iconst_0
+            code.op(0x36, -1); // istore i
+            code.u1(6);
+            int loop = code.length();
+            code.iload(6);
+            code.iload(5);
+            int exitJump = code.length();
+            code.op(0xa2, -2); // if_icmpge end
+            code.u2(0);
+            code.aload(1);
+            code.iload(2);
+            code.iload(6);
+            code.op(0x60, -1); // iadd
+            code.op(0x31, 0); // daload
+            code.dstore(7);
+            code.aload(3);
+            code.iload(4);
+            code.iload(6);
+            code.op(0x60, -1); // iadd
+            emit(code, expression, 7);
+            code.op(0x52, -4); // dastore
+            code.op(0x84, 0); // iinc i, 1
+            code.u1(6);
+            code.u1(1);
+            int back = code.length();
+            code.op(0xa7, 0); // goto loop
+            code.u2(loop - back);
+            int end = code.length();
+            code.op(0xb1, 0); // return
+            code.patch(exitJump + 1, end - exitJump);
+
+            // кадры для верификатора: в начале цикла к параметрам добавлен int i,
+            // в конце - те же локальные переменные
+            code.frames = new byte[] {
+                    0, 2,
+                    (byte) 252, (byte) (loop >>> 8), (byte) loop, 1, // append_frame: int
+                    (byte) 251, (byte) ((end - loop - 1) >>> 8), (byte) (end - loop - 1) // same_frame_extended
+            };
+            return code;
+        }
+
+        private Code constructor() {
+            Code code = new Code(2);
+            code.aload(0);
+            code.aload(1);
+            code.op(0xb7, -2); // invokespecial CompiledFunction.<init>(Function)
+            code.u2(pool.method(BASE, "<init>", "(L" + FUNCTION + ";)V"));
+            code.op(0xb1, 0);
+            return code;
+        }
+
+        // поля листьев заполняются из данных класса (массив Function)
+        private Code staticInitializer() {
+            Code code = new Code(1);
+            code.invokeStatic(pool, "java/lang/invoke/MethodHandles", "lookup",
+                    "()Ljava/lang/invoke/MethodHandles$Lookup;", 1);
+            code.op(0x12, 1); // ldc "_"
+            code.u1Index(pool.string("_"));
+            code.op(0x12, 1); // ldc Object[].class
+            code.u1Index(pool.classRef("[Ljava/lang/Object;"));
+            code.invokeStatic(pool, "java/lang/invoke/MethodHandles", "classData",
+                    "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;)Ljava/lang/Object;", -2);
+            code.op(0xc0, 0); // checkcast Object[]
+            code.u2(pool.classRef("[Ljava/lang/Object;"));
+            code.op(0x4b, -1); // astore_0
+            for (int i = 0; i < leaves.size(); i++) {
+                code.aload(0);
+                code.op(0x11, 1); // sipush i
+                code.u2(i);
+                code.op(0x32, -1); // aaload
+                code.op(0xc0, 0); // checkcast Function
+                code.u2(pool.classRef(FUNCTION));
+                code.op(0xb3, -1); // putstatic
+                code.u2(pool.field(BASE + "$Generated", leafName(i), "L" + FUNCTION + ";"));
+            }
+            code.op(0xb1, 0);
+            return code;
+        }
+
+        private byte[] method(int access, String name, String descriptor, Code code) {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeShort(access);
+                out.writeShort(pool.utf8(name));
+                out.writeShort(pool.utf8(descriptor));
+                out.writeShort(1);
+                out.writeShort(pool.utf8("Code"));
+                byte[] body = code.toByteArray();
+                int framesLength = (code.frames == null) ? 0 : 6 + code.frames.length;
+                out.writeInt(12 + body.length + framesLength);
+                out.writeShort(code.maxStack);
+                out.writeShort(code.maxLocals);
+                out.writeInt(body.length);
+                out.write(body);
+                out.writeShort(0); // таблица исключений
+                if (code.frames == null) {
+                    out.writeShort(0);
+                } else {
+                    out.writeShort(1);
+                    out.writeShort(pool.utf8("StackMapTable"));
+                    out.writeInt(code.frames.length);
+                    out.write(code.frames);
+                }
+                return bytes.toByteArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // Байт-код одного метода с учётом глубины стека и числа локальных переменных
+    private static final class Code {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private int stack;
+        private int maxStack;
+        private int maxLocals;
+        private byte[] frames; // StackMapTable без заголовка или null
+
+        Code(int locals) {
+            this.maxLocals = locals;
+        }
+
+        int length() {
+            return bytes.size();
+        }
+
+        void op(int opcode, int stackDelta) {
+            bytes.write(opcode);
+            stack += stackDelta;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        void u1(int value) {
+            bytes.write(value);
+        }
+
+        void u2(int value) {
+            bytes.write(value >>> 8);
+            bytes.write(value);
+        }
+
+        void u1Index(int index) {
+            if (index > 0xff) {
+                throw new IllegalStateException("Constant pool index too large for ldc");
+            }
+            u1(index);
+        }
+
+        int newDoubleLocal() {
+            int slot = maxLocals;
+            maxLocals += 2;
+            return slot;
+        }
+
+        void dconst(ConstantPool pool, double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            if (bits == 0L) {
+                op(0x0e, 2); // dconst_0
+            } else if (value == 1.0) {
+                op(0x0f, 2); // dconst_1
+            } else {
+                op(0x14, 2); // ldc2_w
+                u2(pool.doubleConstant(value));
+            }
+        }
+
+        void dload(int slot) {
+            local(0x18, 0x26, slot, 2);
+        }
+
+        void dstore(int slot) {
+            local(0x39, 0x47, slot, -2);
+        }
+
+        void iload(int slot) {
+            local(0x15, 0x1a, slot, 1);
+        }
+
+        void aload(int slot) {
+            local(0x19, 0x2a, slot, 1);
+        }
+
+        // короткая форма для слотов 0-3, обычная до 255, дальше - wide
+        private void local(int opcode, int shortOpcode, int slot, int stackDelta) {
+            if (slot <= 3) {
+                op(shortOpcode + slot, stackDelta);
+            } else if (slot <= 0xff) {
+                op(opcode, stackDelta);
+                u1(slot);
+            } else {
+                u1(0xc4); // wide
+                op(opcode, stackDelta);
+                u2(slot);
+            }
+        }
+
+        void invokeStatic(ConstantPool pool, String owner, String name, String descriptor, int stackDelta) {
+            op(0xb8, stackDelta);
+            u2(pool.method(owner, name, descriptor));
+        }
+
+        // записывает 16-битное смещение перехода по позиции at
+        void patch(int at, int offset) {
+            byte[] code = bytes.toByteArray();
+            code[at] = (byte) (offset >>> 8);
+            code[at + 1] = (byte) offset;
+            bytes.reset();
+            bytes.write(code, 0, code.length);
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+
+    // Пул констант class-файла; одинаковые константы не повторяются
+    private static final class ConstantPool {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private int count = 1;
+
+        int utf8(String value) {
+            Integer index = indexes.get("U" + value);
+            if (index != null) {
+                return index;
+            }
+            return add("U" + value, 1, () -> out.writeUTF(value));
+        }
+
+        int classRef(String internalName) {
+            Integer index = indexes.get("C" + internalName);
+            if (index != null) {
+                return index;
+            }
+            int name = utf8(internalName);
+            return add("C" + internalName, 7, () -> out.writeShort(name));
+        }
+
+        int string(String value) {
+            Integer index = indexes.get("S" + value);
+            if (index != null) {
+                return index;
+            }
+            int utf = utf8(value);
+            return add("S" + value, 8, () -> out.writeShort(utf));
+        }
+
+        int doubleConstant(double value) {
+            String key = "D" + Double.doubleToRawLongBits(value);
+            Integer index = indexes.get(key);
+            if (index != null) {
+                return index;
+            }
+            int result = add(key, 6, () -> out.writeDouble(value));
+            count++; // double занимает две ячейки пула
+            return result;
+        }
+
+        int field(String owner, String name, String descriptor) {
+            return member(9, owner, name, descriptor);
+        }
+
+        int method(String owner, String name, String descriptor) {
+            return member(10, owner, name, descriptor);
+        }
+
+        int interfaceMethod(String owner, String name, String descriptor) {
+            return member(11, owner, name, descriptor);
+        }
+
+        private int member(int tag, String owner, String name, String descriptor) {
+            String key = tag + owner + "." + name + descriptor;
+            Integer index = indexes.get(key);
+            if (index != null) {
+                return index;
+            }
+            int ownerIndex = classRef(owner);
+            int nameAndType = nameAndType(name, descriptor);
+            return add(key, tag, () -> {
+                out.writeShort(ownerIndex);
+                out.writeShort(nameAndType);
+            });
+        }
+
+        private int nameAndType(String name, String descriptor) {
+            String key = "N" + name + descriptor;
+            Integer index = indexes.get(key);
+            if (index != null) {
+                return index;
+            }
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            return add(key, 12, () -> {
+                out.writeShort(nameIndex);
+                out.writeShort(descriptorIndex);
+            });
+        }
+
+        private int add(String key, int tag, Entry entry) {
+            try {
+                out.writeByte(tag);
+                entry.write();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            int index = count++;
+            indexes.put(key, index);
+            return index;
+        }
+
+        void writeTo(DataOutputStream target) throws IOException {
+            target.writeShort(count);
+            target.write(bytes.toByteArray());
+        }
+
+        private interface Entry {
+            void write() throws IOException;
+        }
+    }
+
+}
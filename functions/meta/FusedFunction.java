@@ -0,0 +1,56 @@
+package functions.meta;
+
+import functions.Function;
+
+/*
+ * Оптимизированная форма дерева функций, построенного через Functions.shift,
+ * scale, power, sum, mult и composition. Дерево разбирается в Expression:
+ * соседние сдвиги и масштабирования сливаются в одно линейное
+ * преобразование, вложенные суммы и произведения становятся n-арными,
+ * константы сворачиваются, а глубокие композиции вычисляются одним проходом
+ * по цепочке стадий вместо каскада вложенных вызовов.
+ *
+ * Листья (базовые и табулированные функции) не копируются, поэтому
+ * изменения табулированных функций видны и в оптимизированной форме.
+ * Область определения берётся у исходного дерева. Значения могут
+ * отличаться от исходного дерева в последних разрядах из-за другого
+ * порядка округлений.
+ */
+public final class FusedFunction implements Function {
+    private final Function source;
+    private final Expression expression;
+
+    public FusedFunction(Function source) {
+        this(source, Expression.of(source));
+    }
+
+    FusedFunction(Function source, Expression expression) {
+        this.source = source;
+        this.expression = expression;
+    }
+
+    Expression getExpression() {
+        return expression;
+    }
+
+    @Override
+    public double getLeftDomainBorder() {
+        return source.getLeftDomainBorder();
+    }
+
+    @Override
+    public double getRightDomainBorder() {
+        return source.getRightDomainBorder();
+    }
+
+    @Override
+    public double getFunctionValue(double x) {
+        return expression.value(x);
+    }
+
+    @Override
+    public void evaluate(double[] xs, int xsOffset, double[] out, int outOffset, int length) {
+        expression.evaluate(xs, xsOffset, out, outOffset, length);
+    }
+
+}
@@ -0,0 +1,44 @@
+package functions.meta;
+
+import functions.Function;
+
+// Тождественная функция f(x) = x на заданной области определения; вне её
+// значение не определено (NaN)
+public class Identity implements Function {
+    private double leftX;
+    private double rightX;
+
+    public Identity(double leftX, double rightX) {
+        this.leftX = leftX;
+        this.rightX = rightX;
+    }
+
+    @Override
+    public double getLeftDomainBorder() {
+        return leftX;
+    }
+
+    @Override
+    public double getRightDomainBorder() {
+        return rightX;
+    }
+
+    @Override
+    public double getFunctionValue(double x) {
+        return (x >= leftX && x <= rightX) ? x : Double.NaN;
+    }
+
+    @Override
+    public void evaluate(double[] xs, int xsOffset, double[] out, int outOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            double x = xs[xsOffset + i];
+            out[outOffset + i] = (x >= leftX && x <= rightX) ? x : Double.NaN;
+        }
+    }
+
+    // область определения - вся прямая, т.е. функция ничего не меняет
+    public boolean isUnbounded() {
+        return leftX == Double.NEGATIVE_INFINITY && rightX == Double.POSITIVE_INFINITY;
+    }
+
+}
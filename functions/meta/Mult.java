@@ -8,6 +8,9 @@ public class Mult implements Function{
      * являющиеся произведением двух других функций.
      */
 
+    // размер блока пакетного вычисления (временный буфер не больше него)
+    private static final int BLOCK = 512;
+
     private Function fun1;
     private Function fun2;
 
@@ -16,6 +19,15 @@ public class Mult implements Function{
         this.fun2 = fun2;
     }
 
+    // составные части для оптимизаторов пакета
+    Function getFirst() {
+        return fun1;
+    }
+
+    Function getSecond() {
+        return fun2;
+    }
+
     @Override
     public double getLeftDomainBorder() {
         return Math.max(fun1.getLeftDomainBorder(), fun2.getLeftDomainBorder());
@@ -30,4 +42,19 @@ public class Mult implements Function{
     public double getFunctionValue(double x) {
         return fun1.getFunctionValue(x) * fun2.getFunctionValue(x);
     }
+
+    @Override
+    public void evaluate(double[] xs, int xsOffset, double[] out, int outOffset, int length) {
+        // множители второй функции - в отдельный буфер, т.к. out может
+        // совпадать с xs; буфер ограничен блоком, а не длиной пакета
+        double[] values2 = new double[Math.min(length, BLOCK)];
+        for (int start = 0; start < length; start += BLOCK) {
+            int len = Math.min(BLOCK, length - start);
+            fun2.evaluate(xs, xsOffset + start, values2, 0, len);
+            fun1.evaluate(xs, xsOffset + start, out, outOffset + start, len);
+            for (int i = 0; i < len; i++) {
+                out[outOffset + start + i] *= values2[i];
+            }
+        }
+    }
 }
@@ -18,6 +18,15 @@ public class Power implements Function {
         this.pow = power;
     }
 
+    // составные части для оптимизаторов пакета
+    Function getFunction() {
+        return fun;
+    }
+
+    double getPower() {
+        return pow;
+    }
+
     @Override
     public double getLeftDomainBorder() {
         return (fun.getLeftDomainBorder());
@@ -30,6 +39,48 @@ public class Power implements Function {
 
     @Override
     public double getFunctionValue(double x) {
-        return Math.pow(fun.getFunctionValue(x), pow);
+        return pow(fun.getFunctionValue(x), pow);
+    }
+
+    @Override
+    public void evaluate(double[] xs, int xsOffset, double[] out, int outOffset, int length) {
+        fun.evaluate(xs, xsOffset, out, outOffset, length);
+        // частые показатели - отдельными циклами без Math.pow
+        if (pow == 2) {
+            for (int i = outOffset; i < outOffset + length; i++) {
+                out[i] = out[i] * out[i];
+            }
+        } else if (pow == 3) {
+            for (int i = outOffset; i < outOffset + length; i++) {
+                out[i] = out[i] * out[i] * out[i];
+            }
+        } else {
+            for (int i = outOffset; i < outOffset + length; i++) {
+                out[i] = pow(out[i], pow);
+            }
+        }
+    }
+
+    /*
+     * Math.pow с заменой частых показателей более быстрыми операциями:
+     * v * v, v * v * v, Math.sqrt и 1 / v. Особые случаи (нули, бесконечности,
+     * NaN) совпадают с Math.pow; конечные значения куба могут отличаться в
+     * последнем разряде, т.к. умножение округляется дважды.
+     */
+    static double pow(double v, double power) {
+        if (power == 2) {
+            return v * v;
+        }
+        if (power == 3) {
+            return v * v * v;
+        }
+        if (power == 0.5) {
+            // Math.pow(-0.0, 0.5) == +0.0 и Math.pow(-inf, 0.5) == +inf, в отличие от sqrt
+            return (v == Double.NEGATIVE_INFINITY) ? Double.POSITIVE_INFINITY : Math.sqrt(v) + 0.0;
+        }
+        if (power == -1) {
+            return 1 / v;
+        }
+        return Math.pow(v, power);
     }
 }
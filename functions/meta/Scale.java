@@ -17,12 +17,43 @@ public class Scale implements Function {
     private double scaleX;
     private double scaleY;
 
+    /*
+     * Масштабирование масштабирования (ровно класса Scale, не наследника)
+     * хранится одним с произведением коэффициентов, только если оба
+     * произведения вычисляются точно (Expression.exactProduct): иначе,
+     * например, 1e-200 * 1e-200 обратилось бы в 0. При точных произведениях
+     * x / (a * b) округляется один раз, а (x / b) / a - дважды, поэтому
+     * аргумент и значение могут отличаться на единицу последнего разряда.
+     */
     public Scale(Function fun, double scaleX, double scaleY) {
+        if (fun != null && fun.getClass() == Scale.class) {
+            Scale inner = (Scale) fun;
+            if (Expression.exactProduct(scaleX, inner.scaleX) && Expression.exactProduct(scaleY, inner.scaleY)) {
+                double x = scaleX * inner.scaleX;
+                double y = scaleY * inner.scaleY;
+                fun = inner.fun;
+                scaleX = x;
+                scaleY = y;
+            }
+        }
         this.fun = fun;
         this.scaleX = scaleX;
         this.scaleY = scaleY;
     }
 
+    // составные части для оптимизаторов пакета
+    Function getFunction() {
+        return fun;
+    }
+
+    double getScaleX() {
+        return scaleX;
+    }
+
+    double getScaleY() {
+        return scaleY;
+    }
+
     @Override
     public double getLeftDomainBorder() {
         return (fun.getLeftDomainBorder() * scaleX);
@@ -38,4 +69,16 @@ public class Scale implements Function {
         return fun.getFunctionValue(x / scaleX) * scaleY;
     }
 
+    @Override
+    public void evaluate(double[] xs, int xsOffset, double[] out, int outOffset, int length) {
+        // масштабируем аргументы прямо в выходном массиве и вычисляем на месте
+        for (int i = 0; i < length; i++) {
+            out[outOffset + i] = xs[xsOffset + i] / scaleX;
+        }
+        fun.evaluate(out, outOffset, out, outOffset, length);
+        for (int i = outOffset; i < outOffset + length; i++) {
+            out[i] *= scaleY;
+        }
+    }
+
 }
@@ -11,12 +11,43 @@ public class Shift implements Function {
     private double shiftX;
     private double shiftY;
 
+    /*
+     * Сдвиг сдвига (ровно класса Shift, не наследника) хранится одним сдвигом
+     * на сумму смещений, только если обе суммы вычисляются точно
+     * (Expression.exactSum); иначе, например, 1e16 + 1 округлилось бы и
+     * значение разошлось бы с двумя сдвигами. При точных суммах x - (a + b)
+     * округляется один раз, а (x - b) - a - дважды, поэтому аргумент
+     * исходной функции может отличаться на единицу последнего разряда.
+     */
     public Shift(Function fun, double shiftX, double shiftY) {
+        if (fun != null && fun.getClass() == Shift.class) {
+            Shift inner = (Shift) fun;
+            if (Expression.exactSum(shiftX, inner.shiftX) && Expression.exactSum(shiftY, inner.shiftY)) {
+                double x = shiftX + inner.shiftX;
+                double y = shiftY + inner.shiftY;
+                fun = inner.fun;
+                shiftX = x;
+                shiftY = y;
+            }
+        }
         this.fun = fun;
         this.shiftX = shiftX;
         this.shiftY = shiftY;
     }
 
+    // составные части для оптимизаторов пакета
+    Function getFunction() {
+        return fun;
+    }
+
+    double getShiftX() {
+        return shiftX;
+    }
+
+    double getShiftY() {
+        return shiftY;
+    }
+
     @Override
     public double getLeftDomainBorder() {
         return (fun.getLeftDomainBorder() + shiftX);
@@ -32,4 +63,16 @@ public class Shift implements Function {
         return fun.getFunctionValue(x - shiftX) + shiftY;
     }
 
+    @Override
+    public void evaluate(double[] xs, int xsOffset, double[] out, int outOffset, int length) {
+        // сдвигаем аргументы прямо в выходном массиве и вычисляем на месте
+        for (int i = 0; i < length; i++) {
+            out[outOffset + i] = xs[xsOffset + i] - shiftX;
+        }
+        fun.evaluate(out, outOffset, out, outOffset, length);
+        for (int i = outOffset; i < outOffset + length; i++) {
+            out[i] += shiftY;
+        }
+    }
+
 }
\ No newline at end of file
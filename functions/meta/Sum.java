@@ -10,6 +10,9 @@ public class Sum implements Function{
      * суммируемых функций, а область определения функции должна получаться как
      * пересечение областей определения исходных функций.
      */
+    // размер блока пакетного вычисления (временный буфер не больше него)
+    private static final int BLOCK = 512;
+
     //Конструктор класса должен получать ссылки типа Function на объекты суммируемых функций
     private Function fun1;
     private Function fun2;
@@ -19,6 +22,15 @@ public class Sum implements Function{
         this.fun2 = fun2;
     }
 
+    // составные части для оптимизаторов пакета
+    Function getFirst() {
+        return fun1;
+    }
+
+    Function getSecond() {
+        return fun2;
+    }
+
     //область определения функции должна получаться как пересечение областей определения исходных функций.
     @Override
     public double getLeftDomainBorder() {
@@ -33,6 +45,21 @@ public class Sum implements Function{
     public double getFunctionValue(double x) {
         return fun1.getFunctionValue(x) + fun2.getFunctionValue(x);
     }
+
+    @Override
+    public void evaluate(double[] xs, int xsOffset, double[] out, int outOffset, int length) {
+        // блоками: вторую функцию считаем во временный массив до того, как
+        // блок out (возможно, совпадающий с xs) будет перезаписан первой
+        double[] values2 = new double[Math.min(length, BLOCK)];
+        for (int start = 0; start < length; start += BLOCK) {
+            int len = Math.min(BLOCK, length - start);
+            fun2.evaluate(xs, xsOffset + start, values2, 0, len);
+            fun1.evaluate(xs, xsOffset + start, out, outOffset + start, len);
+            for (int i = 0; i < len; i++) {
+                out[outOffset + start + i] += values2[i];
+            }
+        }
+    }
         
 
 